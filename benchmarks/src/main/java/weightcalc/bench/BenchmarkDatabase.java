@@ -0,0 +1,68 @@
+package weightcalc.bench;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import weightcalc.db.DatabaseHandler;
+import weightcalc.model.*;
+
+/**
+ * Throwaway database in a temp directory, seeded with one user's history
+ */
+final class BenchmarkDatabase implements AutoCloseable {
+    static final LocalDate LAST_DAY = LocalDate.of(2024, 12, 31);
+
+    private final Path directory;
+    final DatabaseHandler db;
+    final UserProfile user;
+
+    BenchmarkDatabase() throws IOException, SQLException {
+        directory = Files.createTempDirectory("weightcalc-bench");
+        db = DatabaseHandler.open("jdbc:sqlite:" + directory.resolve("bench_db"));
+        user = new UserProfile(180, 90, 75, 35, Gender.MALE, ActivityLevel.MODERATE_ACTIVITY);
+        db.saveUserProfile(user);
+    }
+
+    /**
+     * Inserts {@code rows} daily logs ending at {@link #LAST_DAY}
+     */
+    void seed(int rows) throws SQLException {
+        List<WeightLog> logs = new ArrayList<>(Math.min(rows, 100_000));
+        for (int i = rows - 1; i >= 0; i--) {
+            logs.add(newLog(user.getId(), LAST_DAY.minusDays(i), i));
+            if (logs.size() == 100_000) {
+                db.saveWeightLogs(logs);
+                logs.clear();
+            }
+        }
+        db.saveWeightLogs(logs);
+    }
+
+    static WeightLog newLog(int userId, LocalDate date, int seed) {
+        WeightLog log = new WeightLog(userId, date, 70 + (seed % 200) / 10.0,
+            1800 + seed % 600, 200 + seed % 400, seed % 90);
+        log.setNotes(seed % 7 == 0 ? "rest day" : null);
+        return log;
+    }
+
+    @Override
+    public void close() throws IOException {
+        db.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
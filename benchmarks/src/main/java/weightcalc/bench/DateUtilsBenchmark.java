@@ -0,0 +1,56 @@
+package weightcalc.bench;
+
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import weightcalc.util.DateUtils;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DateUtilsBenchmark {
+    private LocalDate date;
+    private String text;
+    private String invalidText;
+    private long epochDay;
+    private byte[] buffer;
+
+    @Setup
+    public void setup() {
+        date = LocalDate.of(2024, 2, 29);
+        text = DateUtils.formatForDB(date);
+        invalidText = "2024-02-30";
+        epochDay = date.toEpochDay();
+        buffer = new byte[DateUtils.DB_DATE_LENGTH];
+        DateUtils.writeEpochDay(epochDay, buffer, 0);
+    }
+
+    @Benchmark
+    public String formatForDB() {
+        return DateUtils.formatForDB(date);
+    }
+
+    @Benchmark
+    public LocalDate parseDBDate() {
+        return DateUtils.parseDBDate(text);
+    }
+
+    @Benchmark
+    public LocalDate parseInvalidDBDate() {
+        return DateUtils.parseDBDate(invalidText);
+    }
+
+    @Benchmark
+    public byte[] writeEpochDayBytes() {
+        DateUtils.writeEpochDay(epochDay, buffer, 0);
+        return buffer;
+    }
+
+    @Benchmark
+    public long parseEpochDayBytes() {
+        return DateUtils.parseEpochDay(buffer, 0);
+    }
+}
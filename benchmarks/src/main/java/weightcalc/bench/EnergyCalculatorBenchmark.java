@@ -0,0 +1,59 @@
+package weightcalc.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import weightcalc.calc.EnergyCalculator;
+import weightcalc.model.*;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EnergyCalculatorBenchmark {
+    private static final int PROFILES = 100_000;
+
+    private UserProfile profile;
+    private double[] weights;
+    private double[] heights;
+    private int[] ages;
+    private byte[] genders;
+    private byte[] activities;
+    private double[] targets;
+
+    @Setup
+    public void setup() {
+        profile = new UserProfile(180, 90, 75, 35, Gender.MALE, ActivityLevel.MODERATE_ACTIVITY);
+        SplittableRandom random = new SplittableRandom(42);
+        weights = new double[PROFILES];
+        heights = new double[PROFILES];
+        ages = new int[PROFILES];
+        genders = new byte[PROFILES];
+        activities = new byte[PROFILES];
+        targets = new double[PROFILES];
+        for (int i = 0; i < PROFILES; i++) {
+            weights[i] = random.nextDouble(50, 150);
+            heights[i] = random.nextDouble(150, 200);
+            ages[i] = random.nextInt(18, 90);
+            genders[i] = (byte) random.nextInt(Gender.values().length);
+            activities[i] = (byte) random.nextInt(ActivityLevel.values().length);
+        }
+    }
+
+    @Benchmark
+    public double singleProfile() {
+        double bmr = EnergyCalculator.bmr(profile.getCurrentWeight(), profile.getHeight(),
+            profile.getAge(), profile.getGender());
+        return EnergyCalculator.dailyTarget(EnergyCalculator.tdee(bmr, profile.getActivityLevel()));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PROFILES)
+    public double[] bulkTargets() {
+        EnergyCalculator.computeTargets(weights, heights, ages, genders, activities,
+            null, null, targets, 0, PROFILES);
+        return targets;
+    }
+}
@@ -0,0 +1,58 @@
+package weightcalc.bench;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import weightcalc.model.WeightLog;
+
+/**
+ * Row-at-a-time saveWeightLog against the batched saveWeightLogs path. Each
+ * operation inserts {@code rows} logs, so scores compare directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeightLogInsertBenchmark {
+    @Param({"100", "1000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private List<WeightLog> logs;
+
+    @Setup(Level.Trial)
+    public void openDatabase() throws Exception {
+        database = new BenchmarkDatabase();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareLogs() {
+        logs = new ArrayList<>(rows);
+        LocalDate start = BenchmarkDatabase.LAST_DAY.minusDays(rows);
+        for (int i = 0; i < rows; i++) {
+            logs.add(BenchmarkDatabase.newLog(database.user.getId(), start.plusDays(i), i));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closeDatabase() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public int singleInserts() throws Exception {
+        for (WeightLog log : logs) {
+            database.db.saveWeightLog(log);
+        }
+        return logs.size();
+    }
+
+    @Benchmark
+    public int[] batchedInsert() throws Exception {
+        return database.db.saveWeightLogs(logs);
+    }
+}
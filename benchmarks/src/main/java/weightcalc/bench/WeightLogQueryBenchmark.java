@@ -0,0 +1,70 @@
+package weightcalc.bench;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import weightcalc.model.WeightLog;
+
+/**
+ * Range and latest-log queries over a single user's history of
+ * {@code rows} daily logs
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WeightLogQueryBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    public int rows;
+
+    private BenchmarkDatabase database;
+    private LocalDate monthStart;
+    private LocalDate firstDay;
+
+    @Setup(Level.Trial)
+    public void seed() throws Exception {
+        database = new BenchmarkDatabase();
+        database.seed(rows);
+        firstDay = BenchmarkDatabase.LAST_DAY.minusDays(rows - 1);
+        monthStart = BenchmarkDatabase.LAST_DAY.minusMonths(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        database.close();
+    }
+
+    @Benchmark
+    public List<WeightLog> lastMonth() throws Exception {
+        return database.db.getWeightLogs(database.user.getId(), monthStart,
+            BenchmarkDatabase.LAST_DAY);
+    }
+
+    @Benchmark
+    public List<WeightLog> fullHistory() throws Exception {
+        return database.db.getWeightLogs(database.user.getId(), firstDay,
+            BenchmarkDatabase.LAST_DAY);
+    }
+
+    @Benchmark
+    public int fullHistoryVisitor(Blackhole blackhole) throws Exception {
+        return database.db.forEachWeightLog(database.user.getId(), firstDay,
+            BenchmarkDatabase.LAST_DAY,
+            (id, userId, epochDay, weight, in, out, minutes, notes) -> blackhole.consume(weight));
+    }
+
+    @Benchmark
+    public WeightLog latestUncached() throws Exception {
+        database.db.getLatestLogCache().clear();
+        return database.db.getLatestWeightLog(database.user.getId());
+    }
+
+    @Benchmark
+    public WeightLog latestCached() throws Exception {
+        return database.db.getLatestWeightLog(database.user.getId());
+    }
+}
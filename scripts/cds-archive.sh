@@ -0,0 +1,31 @@
+#!/bin/sh
+# Creates an AppCDS archive (JDK 13+ dynamic archiving) for the headless
+# CLI by recording the classes loaded during a representative run against
+# a scratch database. The archive is only valid for the same JDK and the
+# same classpath, so rerun this after rebuilding.
+set -e
+BASE=$(cd "$(dirname "$0")/.." && pwd)
+CP="$BASE/target/weightcalc-1.0.0.jar"
+for jar in "$BASE"/target/lib/*.jar; do
+    CP="$CP:$jar"
+done
+ARCHIVE="$BASE/target/weightcalc-cli.jsa"
+SCRATCH=$(mktemp -d)
+trap 'rm -rf "$SCRATCH"' EXIT
+
+cli() {
+    java -Djava.awt.headless=true -cp "$CP" weightcalc.cli.WeightLossCli --db "$SCRATCH/train.db" "$@"
+}
+
+# Build up a small database first, then archive a run that opens it,
+# reads rollups and computes the trend
+USER_ID=$(cli profile add --height 175 --weight 90 --target 80 --age 40 \
+    --gender male --activity light)
+cli log add "$USER_ID" 90 --in 2000 --out 300 > /dev/null
+cli export logs "$SCRATCH/logs.csv" > /dev/null
+cli import logs "$SCRATCH/logs.csv" > /dev/null
+
+rm -f "$ARCHIVE"
+java -XX:ArchiveClassesAtExit="$ARCHIVE" -Djava.awt.headless=true -cp "$CP" \
+    weightcalc.cli.WeightLossCli --db "$SCRATCH/train.db" stats "$USER_ID" > /dev/null
+echo "Wrote $ARCHIVE"
@@ -1,11 +1,15 @@
 package weightcalc;
 
+import java.awt.GraphicsEnvironment;
 import javax.swing.SwingUtilities;
+import weightcalc.cli.WeightLossCli;
 import weightcalc.ui.MainFrame;
 
 /**
  * Main entry point for the Weight Loss Tracker application.
- * This class initializes the GUI and starts the application.
+ * This class initializes the GUI and starts the application. When given
+ * arguments it runs them as a {@link WeightLossCli} command instead, without
+ * loading any AWT or Swing classes.
  */
 public class WeightLossTracker {
     
@@ -16,9 +20,20 @@ public class WeightLossTracker {
     
     /**
      * Main method to start the application
-     * @param args Command line arguments (not used)
+     * @param args Command line arguments; if present, a headless command
      */
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(WeightLossCli.run(args));
+        }
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println("No display available. Run with a command, e.g. 'help'.");
+            System.exit(2);
+        }
+        startGui();
+    }
+
+    private static void startGui() {
         // Use SwingUtilities to ensure GUI is created on the Event Dispatch Thread
         SwingUtilities.invokeLater(() -> {
             try {
@@ -0,0 +1,83 @@
+package weightcalc.calc;
+
+import weightcalc.model.ActivityLevel;
+import weightcalc.model.Gender;
+import weightcalc.model.UserProfile;
+import weightcalc.util.Constants;
+
+/**
+ * Headless energy calculations: BMR (Mifflin-St Jeor), TDEE and the daily
+ * calorie target. Works on primitives and enums only, so it can be used from
+ * batch jobs and services as well as the UI.
+ */
+public final class EnergyCalculator {
+
+    /**
+     * Basal metabolic rate using the Mifflin-St Jeor equation
+     */
+    public static double bmr(double weightKg, double heightCm, int age, Gender gender) {
+        return bmr(weightKg, heightCm, age, gender.getBmrOffset());
+    }
+
+    /**
+     * Mifflin-St Jeor with the sex-specific constant passed in directly
+     */
+    public static double bmr(double weightKg, double heightCm, int age, double sexOffset) {
+        return (10 * weightKg) + (6.25 * heightCm) - (5 * age) + sexOffset;
+    }
+
+    /**
+     * Total daily energy expenditure for a given activity multiplier
+     */
+    public static double tdee(double bmr, double activityMultiplier) {
+        return bmr * activityMultiplier;
+    }
+
+    public static double tdee(double bmr, ActivityLevel activityLevel) {
+        return bmr * activityLevel.getMultiplier();
+    }
+
+    /**
+     * Convenience for a stored profile: BMR and TDEE in one call
+     */
+    public static double tdee(UserProfile profile) {
+        return tdee(bmr(profile.getCurrentWeight(), profile.getHeight(), profile.getAge(),
+            profile.getGender()), profile.getActivityLevel());
+    }
+
+    /**
+     * Daily calorie target for healthy weight loss
+     */
+    public static double dailyTarget(double tdee) {
+        return tdee - Constants.DAILY_CALORIE_DEFICIT;
+    }
+
+    /**
+     * Computes BMR, TDEE and daily target for profiles [from, to) of
+     * column-oriented input arrays in a single pass. Gender and activity
+     * level are the stored enum codes and resolve through lookup tables.
+     * Any of the output arrays may be null if that value is not needed.
+     */
+    public static void computeTargets(double[] weightsKg, double[] heightsCm, int[] ages,
+            byte[] genderCodes, byte[] activityCodes, double[] bmrOut, double[] tdeeOut,
+            double[] targetOut, int from, int to) {
+        for (int i = from; i < to; i++) {
+            double bmr = (10 * weightsKg[i]) + (6.25 * heightsCm[i]) - (5 * ages[i])
+                + Gender.bmrOffset(genderCodes[i]);
+            double tdee = bmr * ActivityLevel.multiplier(activityCodes[i]);
+            if (bmrOut != null) {
+                bmrOut[i] = bmr;
+            }
+            if (tdeeOut != null) {
+                tdeeOut[i] = tdee;
+            }
+            if (targetOut != null) {
+                targetOut[i] = tdee - Constants.DAILY_CALORIE_DEFICIT;
+            }
+        }
+    }
+
+    private EnergyCalculator() {
+        // Private constructor to prevent instantiation
+    }
+}
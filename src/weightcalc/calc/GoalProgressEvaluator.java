@@ -0,0 +1,170 @@
+package weightcalc.calc;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import weightcalc.model.GoalMilestone;
+import weightcalc.model.WeightGoal;
+
+/**
+ * Detects milestones crossed by new weight logs. For each user, the active
+ * goals sit in two heaps keyed by their next unreached milestone: losing
+ * goals in a max-heap and gaining goals in a min-heap. A log can only cross
+ * anything if it passes the top of a heap, so the usual case is two peeks,
+ * O(1) however many goals a user has; each crossing costs O(log goals).
+ * Goals that have not started yet wait in a third heap ordered by start
+ * date and join the others, once each, when a log reaches that date. Only
+ * a log dated before a goal already in the heaps started (a backdated
+ * entry) has to step over that goal.
+ *
+ * Users' goals are loaded by the caller and kept for the most recently
+ * active users only. The evaluator owns the goal objects it is given and
+ * updates them as milestones are reached; a caller that changes goals in
+ * the database forgets the user so they are loaded afresh. Not
+ * thread-safe; the database handler calls it under its write lock.
+ */
+public class GoalProgressEvaluator {
+    private final Map<Integer, UserGoals> users;
+
+    public GoalProgressEvaluator(int maxUsers) {
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, UserGoals> eldest) {
+                return size() > maxUsers;
+            }
+        };
+    }
+
+    /**
+     * True if the user's active goals are loaded; otherwise they must be
+     * passed to {@link #track} before logs are evaluated
+     */
+    public boolean isTracking(int userId) {
+        return users.containsKey(userId);
+    }
+
+    public void track(int userId, List<WeightGoal> activeGoals) {
+        UserGoals goals = new UserGoals();
+        for (WeightGoal goal : activeGoals) {
+            goals.add(goal);
+        }
+        users.put(userId, goals);
+    }
+
+    public void forget(int userId) {
+        users.remove(userId);
+    }
+
+    public void clear() {
+        users.clear();
+    }
+
+    /**
+     * Checks a log against the user's active goals and marks every milestone
+     * it crosses as reached on the log's date. A goal whose target is
+     * reached is marked achieved and inactive and stops being watched.
+     * Goals that start after the log's date are left alone, so backdated
+     * logs and imported history cannot reach them.
+     * @return the milestones reached, in no particular order; empty (and
+     *         not allocated) in the usual case where nothing was crossed
+     */
+    public List<GoalMilestone> evaluate(int userId, LocalDate date, double weight) {
+        UserGoals goals = users.get(userId);
+        if (goals == null) {
+            return List.of();
+        }
+        goals.start(date);
+        List<GoalMilestone> reached = List.of();
+        reached = cross(goals.losing, weight, date, true, reached);
+        reached = cross(goals.gaining, weight, date, false, reached);
+        return reached;
+    }
+
+    private static List<GoalMilestone> cross(PriorityQueue<Cursor> heap, double weight,
+            LocalDate date, boolean losing, List<GoalMilestone> reached) {
+        Cursor top;
+        List<Cursor> setAside = null;
+        while ((top = heap.peek()) != null
+                && (losing ? weight <= top.nextWeight : weight >= top.nextWeight)) {
+            heap.poll();
+            if (top.goal.getStartDate().isAfter(date)) {
+                // Backdated log: set the goal aside until the heap is done
+                if (setAside == null) {
+                    setAside = new ArrayList<>(2);
+                }
+                setAside.add(top);
+                continue;
+            }
+            if (reached.isEmpty()) {
+                reached = new ArrayList<>(2);
+            }
+            List<GoalMilestone> milestones = top.goal.getMilestones();
+            // One log may cross several milestones of the same goal
+            while (top.next < milestones.size() && (losing
+                    ? weight <= milestones.get(top.next).getWeight()
+                    : weight >= milestones.get(top.next).getWeight())) {
+                GoalMilestone milestone = milestones.get(top.next++);
+                milestone.setReachedDate(date);
+                reached.add(milestone);
+            }
+            if (top.next < milestones.size()) {
+                top.nextWeight = milestones.get(top.next).getWeight();
+                heap.add(top);
+            } else {
+                top.goal.setActive(false);
+                top.goal.setAchievedDate(date);
+            }
+        }
+        if (setAside != null) {
+            heap.addAll(setAside);
+        }
+        return reached;
+    }
+
+    // A goal's position: index and weight of its next unreached milestone
+    private static final class Cursor {
+        final WeightGoal goal;
+        int next;
+        double nextWeight;
+
+        Cursor(WeightGoal goal, int next) {
+            this.goal = goal;
+            this.next = next;
+            this.nextWeight = goal.getMilestones().get(next).getWeight();
+        }
+    }
+
+    private static final class UserGoals {
+        final PriorityQueue<Cursor> notStarted =
+            new PriorityQueue<>(Comparator.comparing((Cursor c) -> c.goal.getStartDate()));
+        final PriorityQueue<Cursor> losing =
+            new PriorityQueue<>(Comparator.comparingDouble((Cursor c) -> c.nextWeight).reversed());
+        final PriorityQueue<Cursor> gaining =
+            new PriorityQueue<>(Comparator.comparingDouble((Cursor c) -> c.nextWeight));
+
+        void add(WeightGoal goal) {
+            List<GoalMilestone> milestones = goal.getMilestones();
+            int next = 0;
+            while (next < milestones.size() && milestones.get(next).isReached()) {
+                next++;
+            }
+            if (next < milestones.size()) {
+                notStarted.add(new Cursor(goal, next));
+            }
+        }
+
+        // Moves the goals that have started by date into the crossing heaps
+        void start(LocalDate date) {
+            Cursor first;
+            while ((first = notStarted.peek()) != null
+                    && !first.goal.getStartDate().isAfter(date)) {
+                notStarted.poll();
+                (first.goal.isLoss() ? losing : gaining).add(first);
+            }
+        }
+    }
+}
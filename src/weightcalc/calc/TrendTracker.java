@@ -0,0 +1,234 @@
+package weightcalc.calc;
+
+import java.time.LocalDate;
+import weightcalc.model.UserProfile;
+import weightcalc.model.WeightLog;
+import weightcalc.model.WeightLogSeries;
+import weightcalc.util.Constants;
+
+/**
+ * Running weight trend for one user, updated in O(1) per log: an
+ * exponential moving average of the weight, least-squares regression sums
+ * for the weight-over-time slope, and the average net calorie intake. Logs
+ * are expected roughly in date order; the moving average decays by the
+ * number of days since the previous log, and a log dated before it is
+ * folded in as a same-day reading. Not thread-safe.
+ */
+public final class TrendTracker {
+    private final double alpha;
+
+    private long lastDay;
+    private double smoothed = Double.NaN;
+
+    // Regression over x = days since the first log, which keeps the sums
+    // small enough to stay exact over decades of history
+    private long originDay;
+    private int count;
+    private double sumX;
+    private double sumY;
+    private double sumXX;
+    private double sumXY;
+
+    private int calorieDays;
+    private long netIntake;
+
+    public TrendTracker() {
+        this(Constants.TREND_SMOOTHING);
+    }
+
+    /**
+     * @param alpha weight of a reading taken one day after the previous one,
+     *        in (0, 1]
+     */
+    public TrendTracker(double alpha) {
+        if (!(alpha > 0 && alpha <= 1)) {
+            throw new IllegalArgumentException("alpha must be in (0, 1]: " + alpha);
+        }
+        this.alpha = alpha;
+    }
+
+    /**
+     * Seeds a tracker from a user's history in one pass
+     */
+    public static TrendTracker of(WeightLogSeries series, double alpha) {
+        TrendTracker tracker = new TrendTracker(alpha);
+        for (int i = 0, n = series.size(); i < n; i++) {
+            tracker.add(series.epochDay(i), series.weight(i), series.caloriesConsumed(i),
+                series.caloriesBurned(i));
+        }
+        return tracker;
+    }
+
+    public void add(WeightLog log) {
+        add(log.getDate().toEpochDay(), log.getWeight(), log.getCaloriesConsumed(),
+            log.getCaloriesBurned());
+    }
+
+    /**
+     * Folds one log into the trend. Logs without calories consumed are left
+     * out of the intake average, as the day's food was not recorded.
+     */
+    public void add(long epochDay, double weight, int caloriesConsumed, int caloriesBurned) {
+        if (count == 0) {
+            originDay = epochDay;
+            lastDay = epochDay;
+            smoothed = weight;
+        } else {
+            long gap = epochDay - lastDay;
+            // A gap of g days decays the average as g daily steps would
+            double factor = gap <= 1 ? alpha : 1 - Math.pow(1 - alpha, gap);
+            smoothed += factor * (weight - smoothed);
+            if (gap > 0) {
+                lastDay = epochDay;
+            }
+        }
+
+        double x = epochDay - originDay;
+        count++;
+        sumX += x;
+        sumY += weight;
+        sumXX += x * x;
+        sumXY += x * weight;
+
+        if (caloriesConsumed > 0) {
+            calorieDays++;
+            netIntake += caloriesConsumed - caloriesBurned;
+        }
+    }
+
+    public void reset() {
+        smoothed = Double.NaN;
+        count = 0;
+        sumX = 0;
+        sumY = 0;
+        sumXX = 0;
+        sumXY = 0;
+        calorieDays = 0;
+        netIntake = 0;
+    }
+
+    public int getCount() { return count; }
+    public LocalDate getLastDate() { return count == 0 ? null : LocalDate.ofEpochDay(lastDay); }
+
+    /**
+     * Exponentially smoothed weight, NaN before the first log
+     */
+    public double getSmoothedWeight() {
+        return smoothed;
+    }
+
+    /**
+     * Least-squares slope of weight over time in kg per day; NaN until logs
+     * on at least two different days have been added
+     */
+    public double getSlopePerDay() {
+        double denominator = count * sumXX - sumX * sumX;
+        if (count < 2 || denominator == 0) {
+            return Double.NaN;
+        }
+        return (count * sumXY - sumX * sumY) / denominator;
+    }
+
+    /**
+     * Weight on the given day according to the regression line
+     */
+    public double getTrendWeight(LocalDate date) {
+        double slope = getSlopePerDay();
+        if (Double.isNaN(slope)) {
+            return count == 0 ? Double.NaN : sumY / count;
+        }
+        double intercept = (sumY - slope * sumX) / count;
+        return intercept + slope * (date.toEpochDay() - originDay);
+    }
+
+    /**
+     * Average of calories consumed minus calories burned through exercise
+     * over the logs that recorded food, NaN if none did
+     */
+    public double getAverageNetIntake() {
+        return calorieDays == 0 ? Double.NaN : (double) netIntake / calorieDays;
+    }
+
+    /**
+     * Date the smoothed weight reaches the target at the observed calorie
+     * balance, or null if the balance does not move towards the target. The
+     * rate is capped at {@link Constants#MAX_WEIGHT_LOSS_PER_WEEK}, since
+     * faster loss is neither healthy nor sustained in practice.
+     * @param tdee daily energy expenditure before exercise
+     */
+    public LocalDate projectGoalDate(double targetWeight, double tdee) {
+        if (count == 0) {
+            return null;
+        }
+        double days = daysToGoal(smoothed, targetWeight, getAverageNetIntake() - tdee);
+        if (Double.isNaN(days) || days > LocalDate.MAX.toEpochDay() - lastDay) {
+            return null;
+        }
+        return LocalDate.ofEpochDay(lastDay + (long) Math.ceil(days));
+    }
+
+    /**
+     * Goal date for the profile's target weight, with TDEE derived from the
+     * profile's current weight and activity level
+     */
+    public LocalDate projectGoalDate(UserProfile profile) {
+        return projectGoalDate(profile.getTargetWeight(), EnergyCalculator.tdee(profile));
+    }
+
+    /**
+     * Days until currentWeight reaches targetWeight at a constant daily
+     * calorie balance (intake minus expenditure), with the rate of change
+     * capped at {@link Constants#MAX_WEIGHT_LOSS_PER_WEEK}
+     * @return days, 0 if already there, NaN if the balance points away from
+     *         the target or is unknown
+     */
+    public static double daysToGoal(double currentWeight, double targetWeight, double dailyBalance) {
+        double remaining = targetWeight - currentWeight;
+        if (remaining == 0) {
+            return 0;
+        }
+        double kgPerDay = dailyBalance / Constants.CALORIES_PER_KG;
+        if (Double.isNaN(kgPerDay) || kgPerDay == 0 || Math.signum(kgPerDay) != Math.signum(remaining)) {
+            return Double.NaN;
+        }
+        double maxPerDay = Constants.MAX_WEIGHT_LOSS_PER_WEEK / 7;
+        kgPerDay = Math.max(-maxPerDay, Math.min(maxPerDay, kgPerDay));
+        return remaining / kgPerDay;
+    }
+
+    /**
+     * Evaluates every user in one pass over column-oriented logs sorted by
+     * user, then date. For the k-th run of equal user ids, writes the id to
+     * userIdsOut[k] and its smoothed weight, regression slope (kg/day) and
+     * average net intake to the other outputs, any of which may be null.
+     * The id output needs room for every distinct user. One tracker is
+     * reused throughout, so nothing is allocated per row or per user.
+     * @return number of users written
+     */
+    public static int evaluateAll(int[] userIds, int[] epochDays, double[] weights,
+            int[] caloriesConsumed, int[] caloriesBurned, int from, int to, double alpha,
+            int[] userIdsOut, double[] smoothedOut, double[] slopeOut, double[] netIntakeOut) {
+        TrendTracker tracker = new TrendTracker(alpha);
+        int users = 0;
+        int i = from;
+        while (i < to) {
+            int userId = userIds[i];
+            tracker.reset();
+            for (; i < to && userIds[i] == userId; i++) {
+                tracker.add(epochDays[i], weights[i], caloriesConsumed[i], caloriesBurned[i]);
+            }
+            userIdsOut[users] = userId;
+            if (smoothedOut != null) {
+                smoothedOut[users] = tracker.getSmoothedWeight();
+            }
+            if (slopeOut != null) {
+                slopeOut[users] = tracker.getSlopePerDay();
+            }
+            if (netIntakeOut != null) {
+                netIntakeOut[users] = tracker.getAverageNetIntake();
+            }
+            users++;
+        }
+        return users;
+    }
+}
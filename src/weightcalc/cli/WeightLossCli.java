@@ -0,0 +1,519 @@
+package weightcalc.cli;
+
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import weightcalc.WeightLossTracker;
+import weightcalc.calc.EnergyCalculator;
+import weightcalc.calc.TrendTracker;
+import weightcalc.db.DatabaseHandler;
+import weightcalc.db.WeightRepositories;
+import weightcalc.db.WeightRepository;
+import weightcalc.io.DataExporter;
+import weightcalc.io.DataFormat;
+import weightcalc.io.DataImporter;
+import weightcalc.io.Dataset;
+import weightcalc.model.*;
+import weightcalc.util.Constants;
+import weightcalc.util.DateUtils;
+
+/**
+ * Headless entry point for scripts and servers. Never touches AWT or Swing,
+ * and only opens the database (loading the SQLite driver) for commands that
+ * need it, so help and argument errors return immediately. Run
+ * {@code help} for the list of commands.
+ *
+ * Exit codes: 0 on success, 1 on failure, 2 on a usage error.
+ */
+public final class WeightLossCli {
+    private static final String USAGE = """
+        Usage: weightcalc [--engine sqlite|memory|mapped] [--db file|jdbc-url|directory]
+                          <command> [arguments]
+
+        Commands:
+          profile add --height CM --weight KG --target KG --age YEARS
+                      --gender male|female --activity sedentary|light|moderate|very
+          profile show ID
+          profile list
+          profile update ID [--height CM] [--weight KG] [--target KG] [--age YEARS]
+                            [--gender G] [--activity A]
+          profile delete ID
+          log add USER_ID WEIGHT [--date yyyy-MM-dd] [--in KCAL] [--out KCAL]
+                                 [--exercise MIN] [--notes TEXT]
+          log list USER_ID [--from yyyy-MM-dd] [--to yyyy-MM-dd]
+          import logs|profiles FILE [--format csv|ndjson]
+          export logs|profiles FILE [--format csv|ndjson]
+          stats USER_ID [--from yyyy-MM-dd] [--to yyyy-MM-dd] [--period week|month]
+          recompute [USER_ID]     rebuild weekly and monthly rollups (sqlite only)
+          version
+          help
+        """;
+
+    private final PrintStream out;
+    private final PrintStream err;
+    private String engine = System.getProperty(Constants.DB_ENGINE_PROPERTY);
+    private String location = System.getProperty(Constants.DB_LOCATION_PROPERTY);
+    private WeightRepository db;
+
+    WeightLossCli(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs one command and returns the process exit code
+     */
+    public static int run(String[] args) {
+        return new WeightLossCli(System.out, System.err).execute(args);
+    }
+
+    int execute(String[] args) {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (UsageException e) {
+            return usage(e.getMessage());
+        }
+        if (options.has("engine")) {
+            engine = options.remove("engine");
+        }
+        if (options.has("db")) {
+            location = options.remove("db");
+        }
+        try {
+            return dispatch(options);
+        } catch (UsageException e) {
+            return usage(e.getMessage());
+        } catch (Exception e) {
+            err.println("Error: " + e.getMessage());
+            return 1;
+        } finally {
+            if (this.db != null) {
+                this.db.close();
+            }
+        }
+    }
+
+    private int dispatch(Options options) throws Exception {
+        String command = options.next("command");
+        switch (command) {
+            case "profile": return profile(options);
+            case "log": return log(options);
+            case "import": return transfer(options, true);
+            case "export": return transfer(options, false);
+            case "stats": return stats(options);
+            case "recompute": return recompute(options);
+            case "version":
+                out.println("weightcalc " + WeightLossTracker.VERSION);
+                return 0;
+            case "help":
+                out.print(USAGE);
+                return 0;
+            default:
+                throw new UsageException("Unknown command: " + command);
+        }
+    }
+
+    // Opened on first use, so commands without database access stay fast
+    private WeightRepository db() throws SQLException, UsageException {
+        if (db == null) {
+            try {
+                db = WeightRepositories.open(engine, location);
+            } catch (IllegalArgumentException e) {
+                throw new UsageException(e.getMessage());
+            }
+        }
+        return db;
+    }
+
+    // Rollups are only kept by the SQLite engine
+    private DatabaseHandler sqlite(String command) throws SQLException, UsageException {
+        if (db() instanceof DatabaseHandler handler) {
+            return handler;
+        }
+        throw new UsageException(command + " needs the " + WeightRepositories.SQLITE + " engine");
+    }
+
+    private int profile(Options options) throws Exception {
+        String action = options.next("profile action");
+        switch (action) {
+            case "add": {
+                UserProfile profile = new UserProfile(
+                    options.requireDouble("height"),
+                    options.requireDouble("weight"),
+                    options.requireDouble("target"),
+                    options.requireInt("age"),
+                    parseGender(options.require("gender")),
+                    parseActivity(options.require("activity")));
+                options.finish();
+                validate(profile);
+                db().saveUserProfile(profile);
+                out.println(profile.getId());
+                return 0;
+            }
+            case "show": {
+                int id = options.nextInt("profile id");
+                options.finish();
+                UserProfile profile = db().getUserProfile(id);
+                if (profile == null) {
+                    err.println("No profile " + id);
+                    return 1;
+                }
+                printProfile(profile);
+                return 0;
+            }
+            case "list": {
+                options.finish();
+                db().forEachUserProfile(this::printProfile);
+                return 0;
+            }
+            case "update": {
+                int id = options.nextInt("profile id");
+                UserProfile profile = db().getUserProfile(id);
+                if (profile == null) {
+                    err.println("No profile " + id);
+                    return 1;
+                }
+                // Cached instances are shared, so changes go onto a copy
+                UserProfile updated = new UserProfile(
+                    options.getDouble("height", profile.getHeight()),
+                    options.getDouble("weight", profile.getCurrentWeight()),
+                    options.getDouble("target", profile.getTargetWeight()),
+                    options.getInt("age", profile.getAge()),
+                    options.has("gender") ? parseGender(options.remove("gender")) : profile.getGender(),
+                    options.has("activity") ? parseActivity(options.remove("activity"))
+                        : profile.getActivityLevel());
+                updated.setId(id);
+                options.finish();
+                validate(updated);
+                db().updateUserProfile(updated);
+                printProfile(updated);
+                return 0;
+            }
+            case "delete": {
+                int id = options.nextInt("profile id");
+                options.finish();
+                if (!db().deleteUserProfile(id)) {
+                    err.println("No profile " + id);
+                    return 1;
+                }
+                return 0;
+            }
+            default:
+                throw new UsageException("Unknown profile action: " + action);
+        }
+    }
+
+    private int log(Options options) throws Exception {
+        String action = options.next("log action");
+        switch (action) {
+            case "add": {
+                int userId = options.nextInt("user id");
+                double weight = options.nextDouble("weight");
+                LocalDate date = options.getDate("date", LocalDate.now());
+                WeightLog log = new WeightLog(userId, date, weight, options.getInt("in", 0),
+                    options.getInt("out", 0), options.getInt("exercise", 0));
+                log.setNotes(options.remove("notes"));
+                options.finish();
+                if (weight < Constants.MIN_WEIGHT_KG || weight > Constants.MAX_WEIGHT_KG) {
+                    throw new UsageException("Weight must be between " + Constants.MIN_WEIGHT_KG 
+                        + " and " + Constants.MAX_WEIGHT_KG + " kg");
+                }
+                if (db().getUserProfile(userId) == null) {
+                    err.println("No profile " + userId);
+                    return 1;
+                }
+                db().saveWeightLog(log);
+                out.println(log.getId());
+                return 0;
+            }
+            case "list": {
+                int userId = options.nextInt("user id");
+                LocalDate from = options.getDate("from", LocalDate.MIN);
+                LocalDate to = options.getDate("to", LocalDate.MAX);
+                options.finish();
+                out.println("id\tdate\tweight\tin\tout\texercise\tnotes");
+                db().forEachWeightLog(userId, from, to, (id, user, day, weight, in, burned,
+                        minutes, notes) -> out.println(id + "\t" + DateUtils.formatEpochDay(day) 
+                            + "\t" + weight + "\t" + in + "\t" + burned + "\t" + minutes 
+                            + "\t" + (notes != null ? notes.replace('\n', ' ') : "")));
+                return 0;
+            }
+            default:
+                throw new UsageException("Unknown log action: " + action);
+        }
+    }
+
+    private int transfer(Options options, boolean isImport) throws Exception {
+        String name = options.next("dataset");
+        Dataset dataset = Dataset.fromName(name);
+        if (dataset == null) {
+            throw new UsageException("Unknown dataset: " + name);
+        }
+        Path file = Paths.get(options.next("file"));
+        String formatName = options.remove("format");
+        options.finish();
+        DataFormat format;
+        if (formatName != null) {
+            try {
+                format = DataFormat.valueOf(formatName.toUpperCase());
+            } catch (IllegalArgumentException e) {
+                throw new UsageException("Unknown format: " + formatName);
+            }
+        } else {
+            format = DataFormat.fromPath(file);
+            if (format == null) {
+                throw new UsageException("Cannot tell the format of " + file + ", use --format");
+            }
+        }
+        long rows = isImport
+            ? new DataImporter(db()).importFile(dataset, file, format)
+            : new DataExporter(db()).export(dataset, file, format);
+        out.println((isImport ? "Imported " : "Exported ") + rows + " " + dataset.getName());
+        return 0;
+    }
+
+    private int stats(Options options) throws Exception {
+        int userId = options.nextInt("user id");
+        LocalDate to = options.getDate("to", LocalDate.now());
+        LocalDate from = options.getDate("from", to.minusMonths(3));
+        String periodName = options.remove("period");
+        options.finish();
+        RollupPeriod period = RollupPeriod.WEEK;
+        if (periodName != null) {
+            period = periodName.equalsIgnoreCase("month") ? RollupPeriod.MONTH 
+                : periodName.equalsIgnoreCase("week") ? RollupPeriod.WEEK : null;
+            if (period == null) {
+                throw new UsageException("Unknown period: " + periodName);
+            }
+        }
+
+        DatabaseHandler handler = sqlite("stats");
+        UserProfile profile = handler.getUserProfile(userId);
+        if (profile == null) {
+            err.println("No profile " + userId);
+            return 1;
+        }
+        out.println(period.getLabel() + "\tlogs\tmin\tavg\tmax\tin\tout\texercise");
+        for (WeightLogRollup rollup : handler.getWeightLogRollups(userId, period, from, to)) {
+            out.printf("%s\t%d\t%.1f\t%.1f\t%.1f\t%d\t%d\t%d%n",
+                DateUtils.formatEpochDay(rollup.getPeriodStart().toEpochDay()),
+                rollup.getLogCount(), rollup.getMinWeight(), rollup.getAverageWeight(),
+                rollup.getMaxWeight(), rollup.getCaloriesConsumed(), rollup.getCaloriesBurned(),
+                rollup.getExerciseMinutes());
+        }
+
+        TrendTracker trend = TrendTracker.of(handler.getWeightLogSeries(userId, from, to),
+            Constants.TREND_SMOOTHING);
+        if (trend.getCount() == 0) {
+            out.println("No logs in range");
+            return 0;
+        }
+        double tdee = EnergyCalculator.tdee(profile);
+        out.printf("Trend weight: %.1f kg (%+.2f kg/week)%n", trend.getSmoothedWeight(),
+            trend.getSlopePerDay() * 7);
+        out.printf("TDEE: %.0f kcal, average net intake: %.0f kcal%n", tdee,
+            trend.getAverageNetIntake());
+        LocalDate goalDate = trend.projectGoalDate(profile.getTargetWeight(), tdee);
+        out.println("Target " + profile.getTargetWeight() + " kg: " 
+            + (goalDate != null ? "projected for " + goalDate : "not reached at current intake"));
+        return 0;
+    }
+
+    private int recompute(Options options) throws Exception {
+        Integer userId = options.hasNext() ? options.nextInt("user id") : null;
+        options.finish();
+        DatabaseHandler handler = sqlite("recompute");
+        int rows = userId != null ? handler.rebuildRollups(userId) : handler.rebuildRollups();
+        out.println("Rebuilt " + rows + " rollups");
+        return 0;
+    }
+
+    private void printProfile(UserProfile profile) {
+        out.printf("%d\theight %.1f cm\tweight %.1f kg\ttarget %.1f kg\tage %d\t%s\t%s%n",
+            profile.getId(), profile.getHeight(), profile.getCurrentWeight(),
+            profile.getTargetWeight(), profile.getAge(), profile.getGender(),
+            profile.getActivityLevel());
+    }
+
+    private static void validate(UserProfile profile) throws UsageException {
+        if (profile.getHeight() < Constants.MIN_HEIGHT_CM 
+                || profile.getHeight() > Constants.MAX_HEIGHT_CM) {
+            throw new UsageException("Height must be between " + Constants.MIN_HEIGHT_CM 
+                + " and " + Constants.MAX_HEIGHT_CM + " cm");
+        }
+        for (double weight : new double[] {profile.getCurrentWeight(), profile.getTargetWeight()}) {
+            if (weight < Constants.MIN_WEIGHT_KG || weight > Constants.MAX_WEIGHT_KG) {
+                throw new UsageException("Weight must be between " + Constants.MIN_WEIGHT_KG 
+                    + " and " + Constants.MAX_WEIGHT_KG + " kg");
+            }
+        }
+    }
+
+    private static Gender parseGender(String text) throws UsageException {
+        Gender gender = Gender.fromLabel(text);
+        if (gender == null) {
+            throw new UsageException("Unknown gender: " + text);
+        }
+        return gender;
+    }
+
+    private static ActivityLevel parseActivity(String text) throws UsageException {
+        ActivityLevel level = ActivityLevel.fromLabel(text);
+        if (level == null) {
+            // Short forms: sedentary, light, moderate, very
+            for (ActivityLevel candidate : ActivityLevel.values()) {
+                if (candidate.getLabel().toLowerCase().startsWith(text.toLowerCase())) {
+                    return candidate;
+                }
+            }
+            throw new UsageException("Unknown activity level: " + text);
+        }
+        return level;
+    }
+
+    private int usage(String error) {
+        if (error != null) {
+            err.println(error);
+        }
+        err.print(USAGE);
+        return 2;
+    }
+
+    static final class UsageException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UsageException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Positional arguments and --name value options, consumed as the
+     * command is parsed; anything left over is an error
+     */
+    static final class Options {
+        private final List<String> positional = new ArrayList<>();
+        private final Map<String, String> named = new HashMap<>();
+        private int position;
+
+        static Options parse(String[] args) throws UsageException {
+            Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.startsWith("--") && arg.length() > 2) {
+                    if (i + 1 >= args.length) {
+                        throw new UsageException("Missing value for " + arg);
+                    }
+                    options.named.put(arg.substring(2), args[++i]);
+                } else {
+                    options.positional.add(arg);
+                }
+            }
+            return options;
+        }
+
+        boolean hasNext() {
+            return position < positional.size();
+        }
+
+        String next(String what) throws UsageException {
+            if (!hasNext()) {
+                throw new UsageException("Missing " + what);
+            }
+            return positional.get(position++);
+        }
+
+        int nextInt(String what) throws UsageException {
+            return parseInt(what, next(what));
+        }
+
+        double nextDouble(String what) throws UsageException {
+            return parseDouble(what, next(what));
+        }
+
+        boolean has(String name) {
+            return named.containsKey(name);
+        }
+
+        String remove(String name) {
+            return named.remove(name);
+        }
+
+        String require(String name) throws UsageException {
+            String value = named.remove(name);
+            if (value == null) {
+                throw new UsageException("Missing --" + name);
+            }
+            return value;
+        }
+
+        double requireDouble(String name) throws UsageException {
+            return parseDouble("--" + name, require(name));
+        }
+
+        int requireInt(String name) throws UsageException {
+            return parseInt("--" + name, require(name));
+        }
+
+        double getDouble(String name, double defaultValue) throws UsageException {
+            String value = named.remove(name);
+            return value != null ? parseDouble("--" + name, value) : defaultValue;
+        }
+
+        int getInt(String name, int defaultValue) throws UsageException {
+            String value = named.remove(name);
+            return value != null ? parseInt("--" + name, value) : defaultValue;
+        }
+
+        LocalDate getDate(String name, LocalDate defaultValue) throws UsageException {
+            String value = named.remove(name);
+            if (value == null) {
+                return defaultValue;
+            }
+            LocalDate date = DateUtils.parseDBDate(value);
+            if (date == null) {
+                throw new UsageException("Invalid date for --" + name + ": " + value);
+            }
+            return date;
+        }
+
+        /**
+         * Fails if any argument was not consumed
+         */
+        void finish() throws UsageException {
+            if (hasNext()) {
+                throw new UsageException("Unexpected argument: " + positional.get(position));
+            }
+            if (!named.isEmpty()) {
+                throw new UsageException("Unknown option: --" + named.keySet().iterator().next());
+            }
+        }
+
+        private static int parseInt(String what, String text) throws UsageException {
+            try {
+                return Integer.parseInt(text);
+            } catch (NumberFormatException e) {
+                throw new UsageException("Invalid number for " + what + ": " + text);
+            }
+        }
+
+        private static double parseDouble(String what, String text) throws UsageException {
+            try {
+                return Double.parseDouble(text);
+            } catch (NumberFormatException e) {
+                throw new UsageException("Invalid number for " + what + ": " + text);
+            }
+        }
+    }
+}
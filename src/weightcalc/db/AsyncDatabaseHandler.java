@@ -0,0 +1,231 @@
+package weightcalc.db;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import weightcalc.model.*;
+import weightcalc.util.Constants;
+
+/**
+ * Runs {@link WeightRepository} calls on a dedicated executor and returns
+ * futures that complete on a caller-supplied executor. The UI passes
+ * SwingUtilities::invokeLater, so results arrive on the event dispatch
+ * thread and the EDT never waits on disk I/O.
+ *
+ * Opened with {@link #open}, the repository itself is created on the
+ * worker too (schema migration included); tasks submitted meanwhile wait
+ * for it and fail with its error if it cannot be opened.
+ */
+public class AsyncDatabaseHandler implements AutoCloseable {
+    private final CompletableFuture<WeightRepository> db;
+    private final ExecutorService worker;
+    private final Executor callbackExecutor;
+    private final Map<Object, Coalescer<?>> coalescers = new ConcurrentHashMap<>();
+
+    public AsyncDatabaseHandler(WeightRepository db, Executor callbackExecutor) {
+        this(CompletableFuture.completedFuture(db), callbackExecutor, newWorkerExecutor());
+    }
+
+    private AsyncDatabaseHandler(CompletableFuture<WeightRepository> db, Executor callbackExecutor,
+            ExecutorService worker) {
+        this.db = db;
+        this.callbackExecutor = callbackExecutor;
+        this.worker = worker;
+    }
+
+    /**
+     * Returns at once and opens the repository as the worker's first task
+     */
+    public static AsyncDatabaseHandler open(Callable<? extends WeightRepository> opener,
+            Executor callbackExecutor) {
+        ExecutorService worker = newWorkerExecutor();
+        CompletableFuture<WeightRepository> db = new CompletableFuture<>();
+        worker.execute(() -> {
+            try {
+                db.complete(opener.call());
+            } catch (Throwable e) {
+                db.completeExceptionally(e);
+            }
+        });
+        return new AsyncDatabaseHandler(db, callbackExecutor, worker);
+    }
+
+    public CompletableFuture<UserProfile> saveUserProfile(UserProfile profile) {
+        return submit(handler -> {
+            handler.saveUserProfile(profile);
+            return profile;
+        });
+    }
+
+    public CompletableFuture<UserProfile> updateUserProfile(UserProfile profile) {
+        return submit(handler -> {
+            handler.updateUserProfile(profile);
+            return profile;
+        });
+    }
+
+    public CompletableFuture<UserProfile> getUserProfile(int id) {
+        return submit(handler -> handler.getUserProfile(id));
+    }
+
+    public CompletableFuture<WeightLog> saveWeightLog(WeightLog log) {
+        return submit(handler -> handler.saveWeightLog(log));
+    }
+
+    public CompletableFuture<List<WeightLog>> getWeightLogs(int userId, LocalDate startDate,
+            LocalDate endDate) {
+        return submit(handler -> handler.getWeightLogs(userId, startDate, endDate));
+    }
+
+    public CompletableFuture<WeightLog> getLatestWeightLog(int userId) {
+        return submit(handler -> handler.getLatestWeightLog(userId));
+    }
+
+    /**
+     * Runs a task on the worker executor; the returned future completes on
+     * the callback executor
+     */
+    public <T> CompletableFuture<T> submit(DatabaseTask<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        worker.execute(() -> runInto(task, result));
+        return result;
+    }
+
+    /**
+     * Runs a task for a key with at most one execution in flight and one
+     * queued. Requests arriving while the key is busy share the queued run,
+     * which executes the most recently submitted task once the current one
+     * finishes. Repeated reloads therefore collapse into a single query.
+     */
+    public <T> CompletableFuture<T> coalesce(Object key, DatabaseTask<T> task) {
+        while (true) {
+            @SuppressWarnings("unchecked")
+            Coalescer<T> coalescer =
+                (Coalescer<T>) coalescers.computeIfAbsent(key, k -> new Coalescer<T>(k));
+            CompletableFuture<T> result = coalescer.request(task);
+            if (result != null) {
+                return result;
+            }
+            // Went idle and was removed since we looked it up
+        }
+    }
+
+    private <T> void runInto(DatabaseTask<T> task, CompletableFuture<T> result) {
+        WeightRepository repository;
+        try {
+            repository = db.join();
+        } catch (CompletionException e) {
+            // The repository could not be opened
+            Throwable cause = e.getCause() != null ? e.getCause() : e;
+            callbackExecutor.execute(() -> result.completeExceptionally(cause));
+            return;
+        }
+        T value;
+        try {
+            value = task.run(repository);
+        } catch (Throwable e) {
+            callbackExecutor.execute(() -> result.completeExceptionally(e));
+            return;
+        }
+        callbackExecutor.execute(() -> result.complete(value));
+    }
+
+    private class Coalescer<T> {
+        private final Object key;
+        private boolean running;
+        // Set once idle and removed from the map; no longer accepts work
+        private boolean retired;
+        private DatabaseTask<T> queuedTask;
+        private CompletableFuture<T> queuedResult;
+
+        Coalescer(Object key) {
+            this.key = key;
+        }
+
+        // Null if retired, in which case the caller looks the key up again
+        synchronized CompletableFuture<T> request(DatabaseTask<T> task) {
+            if (retired) {
+                return null;
+            }
+            if (!running) {
+                running = true;
+                return start(task);
+            }
+            queuedTask = task;
+            if (queuedResult == null) {
+                queuedResult = new CompletableFuture<>();
+            }
+            return queuedResult;
+        }
+
+        private CompletableFuture<T> start(DatabaseTask<T> task) {
+            CompletableFuture<T> result = new CompletableFuture<>();
+            worker.execute(() -> {
+                try {
+                    runInto(task, result);
+                } finally {
+                    finished();
+                }
+            });
+            return result;
+        }
+
+        private synchronized void finished() {
+            if (queuedTask == null) {
+                running = false;
+                retired = true;
+                coalescers.remove(key, this);
+                return;
+            }
+            DatabaseTask<T> task = queuedTask;
+            CompletableFuture<T> result = queuedResult;
+            queuedTask = null;
+            queuedResult = null;
+            worker.execute(() -> {
+                try {
+                    runInto(task, result);
+                } finally {
+                    finished();
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        worker.shutdown();
+    }
+
+    /**
+     * Virtual threads where the runtime has them (Java 21+), otherwise a
+     * small pool of daemon threads matched to the connection pool size
+     */
+    private static ExecutorService newWorkerExecutor() {
+        try {
+            MethodHandle factory = MethodHandles.publicLookup().findStatic(Executors.class,
+                "newVirtualThreadPerTaskExecutor", MethodType.methodType(ExecutorService.class));
+            return (ExecutorService) factory.invoke();
+        } catch (Throwable e) {
+            // Not available on this runtime
+        }
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "db-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(Constants.DB_READER_POOL_SIZE + 1, threads);
+    }
+}
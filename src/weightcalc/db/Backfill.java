@@ -0,0 +1,23 @@
+package weightcalc.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Data migration that runs online in small chunks after the schema has been
+ * upgraded. Each chunk runs in its own short write transaction, so the app
+ * keeps serving requests while a large table is being rewritten.
+ */
+public interface Backfill {
+    /**
+     * Unique, stable name used to record completion
+     */
+    String name();
+
+    /**
+     * Processes up to chunkSize rows. Must be idempotent: a chunk that was
+     * rolled back is simply run again.
+     * @return number of rows processed, 0 once there is nothing left to do
+     */
+    int runChunk(Connection connection, int chunkSize) throws SQLException;
+}
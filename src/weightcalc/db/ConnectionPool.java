@@ -0,0 +1,204 @@
+package weightcalc.db;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of SQLite connections: one writer plus a fixed set of
+ * read-only connections. The database is switched to WAL mode, so readers
+ * work on the last committed snapshot and never wait for the writer.
+ * Each connection keeps its own {@link StatementCache}, used by whoever
+ * holds the connection.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final Connection writer;
+    private final ReentrantLock writerLock = new ReentrantLock(true);
+    private final BlockingQueue<Connection> readers;
+    private final List<Connection> allReaders;
+    private final long acquireTimeoutMillis;
+    // Filled in the constructor and only read afterwards
+    private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+
+    private final AtomicInteger readersInUse = new AtomicInteger();
+    private final LongAdder readerAcquisitions = new LongAdder();
+    private final LongAdder readerWaitNanos = new LongAdder();
+    private final LongAdder writerAcquisitions = new LongAdder();
+    private final LongAdder writerWaitNanos = new LongAdder();
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+    private volatile boolean closed;
+
+    public ConnectionPool(String url, int readerCount, long acquireTimeoutMillis,
+            int busyTimeoutMillis, int statementCacheSize) throws SQLException {
+        if (readerCount < 1) {
+            throw new IllegalArgumentException("readerCount must be at least 1");
+        }
+        if (statementCacheSize < 1) {
+            throw new IllegalArgumentException("statementCacheSize must be at least 1");
+        }
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.readers = new ArrayBlockingQueue<>(readerCount);
+        this.allReaders = new ArrayList<>(readerCount);
+
+        writer = DriverManager.getConnection(url);
+        try {
+            try (Statement stmt = writer.createStatement()) {
+                stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+                // WAL is persistent in the database file, so setting it once
+                // on the writer also covers every reader opened afterwards
+                stmt.execute("PRAGMA journal_mode = WAL");
+                stmt.execute("PRAGMA foreign_keys = ON");
+            }
+            statementCaches.put(writer, newStatementCache(writer, statementCacheSize));
+            for (int i = 0; i < readerCount; i++) {
+                Connection reader = DriverManager.getConnection(url);
+                allReaders.add(reader);
+                try (Statement stmt = reader.createStatement()) {
+                    stmt.execute("PRAGMA busy_timeout = " + busyTimeoutMillis);
+                    stmt.execute("PRAGMA query_only = ON");
+                }
+                statementCaches.put(reader, newStatementCache(reader, statementCacheSize));
+                readers.add(reader);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    private StatementCache newStatementCache(Connection connection, int size) {
+        return new StatementCache(connection, size, statementHits, statementMisses,
+            statementEvictions);
+    }
+
+    /**
+     * Prepares sql on a connection currently held from this pool, reusing
+     * the connection's cached statement when there is one. The statement
+     * belongs to the cache: close its result set, not the statement.
+     */
+    PreparedStatement prepareCached(Connection connection, String sql) throws SQLException {
+        return statementCache(connection).prepare(sql);
+    }
+
+    PreparedStatement prepareCached(Connection connection, String sql, int autoGeneratedKeys)
+            throws SQLException {
+        return statementCache(connection).prepare(sql, autoGeneratedKeys);
+    }
+
+    private StatementCache statementCache(Connection connection) throws SQLException {
+        StatementCache cache = statementCaches.get(connection);
+        if (cache == null) {
+            throw new SQLException("Connection does not belong to this pool");
+        }
+        return cache;
+    }
+
+    /**
+     * Borrows a read-only connection, waiting up to the configured timeout
+     * if all readers are in use. Must be returned with {@link #releaseReader}.
+     */
+    public Connection acquireReader() throws SQLException {
+        ensureOpen();
+        long start = System.nanoTime();
+        Connection connection;
+        try {
+            connection = readers.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a read connection", e);
+        } finally {
+            readerWaitNanos.add(System.nanoTime() - start);
+        }
+        if (connection == null) {
+            throw new SQLTimeoutException("Timed out waiting for a read connection");
+        }
+        readersInUse.incrementAndGet();
+        readerAcquisitions.increment();
+        return connection;
+    }
+
+    public void releaseReader(Connection connection) {
+        readersInUse.decrementAndGet();
+        readers.offer(connection);
+    }
+
+    /**
+     * Takes exclusive ownership of the writer connection. The lock is
+     * reentrant, so nested writes on the same thread share the connection.
+     * Must be returned with {@link #releaseWriter}.
+     */
+    public Connection acquireWriter() throws SQLException {
+        ensureOpen();
+        long start = System.nanoTime();
+        boolean locked;
+        try {
+            locked = writerLock.tryLock(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the write connection", e);
+        } finally {
+            writerWaitNanos.add(System.nanoTime() - start);
+        }
+        if (!locked) {
+            throw new SQLTimeoutException("Timed out waiting for the write connection");
+        }
+        writerAcquisitions.increment();
+        return writer;
+    }
+
+    public void releaseWriter() {
+        writerLock.unlock();
+    }
+
+    // Pool statistics
+    public int getReaderPoolSize() { return allReaders.size(); }
+    public int getReadersInUse() { return readersInUse.get(); }
+    public boolean isWriterInUse() { return writerLock.isLocked(); }
+    public int getWriterQueueLength() { return writerLock.getQueueLength(); }
+    public long getReaderAcquisitions() { return readerAcquisitions.sum(); }
+    public long getReaderWaitNanos() { return readerWaitNanos.sum(); }
+    public long getWriterAcquisitions() { return writerAcquisitions.sum(); }
+    public long getWriterWaitNanos() { return writerWaitNanos.sum(); }
+    public long getStatementCacheHits() { return statementHits.sum(); }
+    public long getStatementCacheMisses() { return statementMisses.sum(); }
+    public long getStatementCacheEvictions() { return statementEvictions.sum(); }
+    public boolean isClosed() { return closed; }
+
+    private void ensureOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (StatementCache cache : statementCaches.values()) {
+            cache.close();
+        }
+        for (Connection reader : allReaders) {
+            closeQuietly(reader);
+        }
+        if (writer != null) {
+            closeQuietly(writer);
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing connection: " + e.getMessage());
+        }
+    }
+}
@@ -3,68 +3,202 @@ package weightcalc.db;
 import java.sql.*;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import weightcalc.calc.GoalProgressEvaluator;
 import weightcalc.model.*;
 import weightcalc.util.*;
 
-public class DatabaseHandler {
-    private Connection connection;
-    private static DatabaseHandler instance;
+public class DatabaseHandler implements WeightRepository {
+    private ConnectionPool pool;
+    // Both caches hand out shared instances; callers must not mutate them
+    // without saving them back through this handler
+    private final LruCache<Integer, UserProfile> profileCache =
+        new LruCache<>(Constants.PROFILE_CACHE_SIZE);
+    private final LruCache<Integer, WeightLog> latestLogCache =
+        new LruCache<>(Constants.LATEST_LOG_CACHE_SIZE);
+    // Only touched while holding the writer
+    private final GoalProgressEvaluator goalProgress =
+        new GoalProgressEvaluator(Constants.GOAL_TRACKER_CACHE_SIZE);
+    private final List<Consumer<GoalMilestone>> milestoneListeners = new CopyOnWriteArrayList<>();
 
     private DatabaseHandler() {
-        initializeDatabase();
+        try {
+            initializeDatabase(Constants.DB_URL);
+        } catch (Exception e) {
+            System.err.println("Database initialization error: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private DatabaseHandler(String url) throws SQLException {
+        initializeDatabase(url);
+    }
+
+    // Initialization-on-demand holder: the JVM guarantees the instance is
+    // created exactly once, on first use, without explicit locking
+    private static class Holder {
+        private static final DatabaseHandler INSTANCE = new DatabaseHandler();
     }
 
     public static DatabaseHandler getInstance() {
-        if (instance == null) {
-            instance = new DatabaseHandler();
-        }
-        return instance;
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Opens a separate handler on another database, e.g. for benchmarks or
+     * tools. Unlike the shared instance it must be closed by the caller.
+     */
+    public static DatabaseHandler open(String url) throws SQLException {
+        return new DatabaseHandler(url);
     }
 
-    private void initializeDatabase() {
+    private void initializeDatabase(String url) throws SQLException {
         try {
             Class.forName("org.sqlite.JDBC");
-            connection = DriverManager.getConnection(Constants.DB_URL);
-            createTables();
-        } catch (Exception e) {
-            System.err.println("Database initialization error: " + e.getMessage());
-            e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("SQLite JDBC driver not found on the classpath", e);
+        }
+        pool = new ConnectionPool(url, Constants.DB_READER_POOL_SIZE,
+            Constants.DB_POOL_TIMEOUT_MS, Constants.DB_BUSY_TIMEOUT_MS,
+            Constants.DB_STATEMENT_CACHE_SIZE);
+        try {
+            SchemaMigrator migrator = new SchemaMigrator(Migrations.all());
+            write(migrator::migrate);
+            startBackfills(migrator);
+        } catch (SQLException | RuntimeException e) {
+            pool.close();
+            pool = null;
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Exposes the connection pool for monitoring wait times and usage
+     */
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    public LruCache<Integer, UserProfile> getProfileCache() {
+        return profileCache;
+    }
+
+    public LruCache<Integer, WeightLog> getLatestLogCache() {
+        return latestLogCache;
+    }
+
+    private ConnectionPool pool() throws SQLException {
+        if (pool == null) {
+            throw new SQLException("Database is not initialized");
         }
+        return pool;
     }
 
-    private void createTables() throws SQLException {
-        try (Statement stmt = connection.createStatement()) {
-            // Create UserProfile table
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS user_profiles (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    height REAL NOT NULL,
-                    current_weight REAL NOT NULL,
-                    target_weight REAL NOT NULL,
-                    age INTEGER NOT NULL,
-                    gender TEXT NOT NULL,
-                    activity_level TEXT NOT NULL
-                )
-            """);
-
-            // Create WeightLog table
-            stmt.execute("""
-                CREATE TABLE IF NOT EXISTS weight_logs (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    user_id INTEGER NOT NULL,
-                    date TEXT NOT NULL,
-                    weight REAL NOT NULL,
-                    calories_consumed INTEGER,
-                    calories_burned INTEGER,
-                    exercise_minutes INTEGER,
-                    notes TEXT,
-                    FOREIGN KEY (user_id) REFERENCES user_profiles(id)
-                )
-            """);
+    private <T> T read(SqlFunction<T> work) throws SQLException {
+        ConnectionPool p = pool();
+        Connection connection = p.acquireReader();
+        try {
+            return work.apply(connection);
+        } finally {
+            p.releaseReader(connection);
         }
     }
 
+    private <T> T write(SqlFunction<T> work) throws SQLException {
+        ConnectionPool p = pool();
+        Connection connection = p.acquireWriter();
+        try {
+            return work.apply(connection);
+        } finally {
+            p.releaseWriter();
+        }
+    }
+
+    /**
+     * Runs pending backfills one chunk (one short write transaction) at a
+     * time on a background thread, so foreground writes interleave with them
+     */
+    private void startBackfills(SchemaMigrator migrator) throws SQLException {
+        List<Backfill> pending = read(migrator::pendingBackfills);
+        if (pending.isEmpty()) {
+            return;
+        }
+        ConnectionPool p = pool;
+        Thread thread = new Thread(() -> {
+            for (Backfill backfill : pending) {
+                try {
+                    boolean done = false;
+                    while (!done) {
+                        done = write(connection -> inTransaction(connection, c -> {
+                            if (backfill.runChunk(c, Constants.DB_BACKFILL_CHUNK_SIZE) > 0) {
+                                return false;
+                            }
+                            migrator.markBackfillComplete(c, backfill);
+                            return true;
+                        }));
+                    }
+                } catch (SQLException e) {
+                    // Short-lived handlers may close before a backfill is
+                    // done; it resumes when the database is next opened
+                    if (!p.isClosed()) {
+                        System.err.println("Backfill " + backfill.name() + " failed: " + e.getMessage());
+                    }
+                    return;
+                }
+            }
+        }, "schema-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Returns the held connection's cached statement for sql, with its
+     * parameters cleared. Used on the hot paths; the statement must not be
+     * closed, only its result sets.
+     */
+    private PreparedStatement prepareCached(Connection connection, String sql)
+            throws SQLException {
+        return pool().prepareCached(connection, sql);
+    }
+
+    private PreparedStatement prepareCached(Connection connection, String sql,
+            int autoGeneratedKeys) throws SQLException {
+        return pool().prepareCached(connection, sql, autoGeneratedKeys);
+    }
+
+    private static <T> T inTransaction(Connection connection, SqlFunction<T> work)
+            throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            T result = work.apply(connection);
+            connection.commit();
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    @Override
     public void saveUserProfile(UserProfile profile) throws SQLException {
         String sql = """
             INSERT INTO user_profiles (height, current_weight, target_weight, 
@@ -72,14 +206,15 @@ public class DatabaseHandler {
             VALUES (?, ?, ?, ?, ?, ?)
         """;
         
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, 
-                Statement.RETURN_GENERATED_KEYS)) {
+        write(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, sql,
+                Statement.RETURN_GENERATED_KEYS);
             pstmt.setDouble(1, profile.getHeight());
             pstmt.setDouble(2, profile.getCurrentWeight());
             pstmt.setDouble(3, profile.getTargetWeight());
             pstmt.setInt(4, profile.getAge());
-            pstmt.setString(5, profile.getGender());
-            pstmt.setString(6, profile.getActivityLevel());
+            pstmt.setInt(5, profile.getGender().getCode());
+            pstmt.setInt(6, profile.getActivityLevel().getCode());
             
             pstmt.executeUpdate();
             
@@ -88,9 +223,12 @@ public class DatabaseHandler {
                     profile.setId(rs.getInt(1));
                 }
             }
-        }
+            return null;
+        });
+        profileCache.put(profile.getId(), profile);
     }
 
+    @Override
     public void updateUserProfile(UserProfile profile) throws SQLException {
         String sql = """
             UPDATE user_profiles 
@@ -99,117 +237,937 @@ public class DatabaseHandler {
             WHERE id = ?
         """;
         
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        write(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, sql);
             pstmt.setDouble(1, profile.getHeight());
             pstmt.setDouble(2, profile.getCurrentWeight());
             pstmt.setDouble(3, profile.getTargetWeight());
             pstmt.setInt(4, profile.getAge());
-            pstmt.setString(5, profile.getGender());
-            pstmt.setString(6, profile.getActivityLevel());
+            pstmt.setInt(5, profile.getGender().getCode());
+            pstmt.setInt(6, profile.getActivityLevel().getCode());
             pstmt.setInt(7, profile.getId());
             
-            pstmt.executeUpdate();
-        }
+            return pstmt.executeUpdate();
+        });
+        profileCache.invalidate(profile.getId());
+        profileCache.put(profile.getId(), profile);
     }
 
+    @Override
     public UserProfile getUserProfile(int id) throws SQLException {
+        UserProfile cached = profileCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = profileCache.stamp();
+        UserProfile profile = loadUserProfile(id);
+        if (profile != null) {
+            profileCache.putIfFresh(id, profile, stamp);
+        }
+        return profile;
+    }
+
+    private UserProfile loadUserProfile(int id) throws SQLException {
         String sql = "SELECT * FROM user_profiles WHERE id = ?";
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, sql);
             pstmt.setInt(1, id);
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    UserProfile profile = new UserProfile(
-                        rs.getDouble("height"),
-                        rs.getDouble("current_weight"),
-                        rs.getDouble("target_weight"),
-                        rs.getInt("age"),
-                        rs.getString("gender"),
-                        rs.getString("activity_level")
-                    );
-                    profile.setId(rs.getInt("id"));
-                    return profile;
+                    return readUserProfile(rs);
                 }
             }
-        }
-        return null;
+            return null;
+        });
     }
 
-    public void saveWeightLog(WeightLog log) throws SQLException {
+    /**
+     * Streams every profile in id order to the consumer, holding a read
+     * connection until done
+     * @return number of profiles visited
+     */
+    @Override
+    public int forEachUserProfile(Consumer<UserProfile> consumer) throws SQLException {
+        String sql = "SELECT * FROM user_profiles ORDER BY id";
+        return read(connection -> {
+            int count = 0;
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setFetchSize(Constants.DB_FETCH_SIZE);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        consumer.accept(readUserProfile(rs));
+                        count++;
+                    }
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Inserts profiles keeping the ids they carry, e.g. when importing a
+     * dump whose weight logs refer to them. Runs as one transaction and
+     * fails if an id is already taken.
+     * @return number of profiles inserted
+     */
+    @Override
+    public int restoreUserProfiles(Iterator<UserProfile> profiles) throws SQLException {
         String sql = """
-            INSERT INTO weight_logs (user_id, date, weight, calories_consumed,
-                calories_burned, exercise_minutes, notes)
+            INSERT INTO user_profiles (id, height, current_weight, target_weight,
+                age, gender, activity_level)
             VALUES (?, ?, ?, ?, ?, ?, ?)
         """;
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, log.getUserId());
-            pstmt.setString(2, DateUtils.formatForDB(log.getDate()));
-            pstmt.setDouble(3, log.getWeight());
-            pstmt.setInt(4, log.getCaloriesConsumed());
-            pstmt.setInt(5, log.getCaloriesBurned());
-            pstmt.setInt(6, log.getExerciseMinutes());
-            pstmt.setString(7, log.getNotes());
-            
+
+        return write(connection -> inTransaction(connection, c -> {
+            int count = 0;
+            try (PreparedStatement pstmt = c.prepareStatement(sql)) {
+                while (profiles.hasNext()) {
+                    UserProfile profile = profiles.next();
+                    pstmt.setInt(1, profile.getId());
+                    pstmt.setDouble(2, profile.getHeight());
+                    pstmt.setDouble(3, profile.getCurrentWeight());
+                    pstmt.setDouble(4, profile.getTargetWeight());
+                    pstmt.setInt(5, profile.getAge());
+                    pstmt.setInt(6, profile.getGender().getCode());
+                    pstmt.setInt(7, profile.getActivityLevel().getCode());
+                    pstmt.addBatch();
+                    if (++count % Constants.DB_BATCH_CHUNK_SIZE == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+            return count;
+        }));
+    }
+
+    /**
+     * Highest profile id in use, or 0 for an empty database
+     */
+    int getMaxUserProfileId() throws SQLException {
+        String sql = "SELECT COALESCE(MAX(id), 0) FROM user_profiles";
+        return read(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql);
+                 ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    /**
+     * Takes the next count values of a named sequence, never starting below
+     * floor. The sequence row is updated in its own write transaction, so
+     * blocks handed to different processes never overlap.
+     * @return the first value of the block
+     */
+    long reserveIds(String sequence, int count, long floor) throws SQLException {
+        String upsertSql = """
+            INSERT INTO id_sequences (name, next_value) VALUES (?, ?)
+            ON CONFLICT (name) DO UPDATE SET next_value = MAX(next_value, excluded.next_value)
+        """;
+        String selectSql = "SELECT next_value FROM id_sequences WHERE name = ?";
+        String advanceSql = "UPDATE id_sequences SET next_value = next_value + ? WHERE name = ?";
+
+        return write(connection -> inTransaction(connection, c -> {
+            try (PreparedStatement pstmt = c.prepareStatement(upsertSql)) {
+                pstmt.setString(1, sequence);
+                pstmt.setLong(2, floor);
+                pstmt.executeUpdate();
+            }
+            long first;
+            try (PreparedStatement pstmt = c.prepareStatement(selectSql)) {
+                pstmt.setString(1, sequence);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    rs.next();
+                    first = rs.getLong(1);
+                }
+            }
+            try (PreparedStatement pstmt = c.prepareStatement(advanceSql)) {
+                pstmt.setInt(1, count);
+                pstmt.setString(2, sequence);
+                pstmt.executeUpdate();
+            }
+            return first;
+        }));
+    }
+
+    /**
+     * Deletes a profile together with its logs, rollups and goals in one
+     * transaction
+     * @return true if the profile existed
+     */
+    @Override
+    public boolean deleteUserProfile(int id) throws SQLException {
+        String[] statements = {
+            """
+            DELETE FROM goal_milestones
+            WHERE goal_id IN (SELECT id FROM weight_goals WHERE user_id = ?)
+            """,
+            "DELETE FROM weight_goals WHERE user_id = ?",
+            "DELETE FROM weight_log_rollups WHERE user_id = ?",
+            "DELETE FROM weight_logs WHERE user_id = ?",
+            "DELETE FROM user_profiles WHERE id = ?"
+        };
+
+        boolean deleted = write(connection -> inTransaction(connection, c -> {
+            int rows = 0;
+            for (String sql : statements) {
+                try (PreparedStatement pstmt = c.prepareStatement(sql)) {
+                    pstmt.setInt(1, id);
+                    rows = pstmt.executeUpdate();
+                }
+            }
+            goalProgress.forget(id);
+            return rows > 0;
+        }));
+        profileCache.invalidate(id);
+        latestLogCache.invalidate(id);
+        return deleted;
+    }
+
+    private static UserProfile readUserProfile(ResultSet rs) throws SQLException {
+        UserProfile profile = new UserProfile(
+            rs.getDouble("height"),
+            rs.getDouble("current_weight"),
+            rs.getDouble("target_weight"),
+            rs.getInt("age"),
+            Gender.fromCode(rs.getInt("gender")),
+            ActivityLevel.fromCode(rs.getInt("activity_level"))
+        );
+        profile.setId(rs.getInt("id"));
+        return profile;
+    }
+
+    private static final String INSERT_WEIGHT_LOG_SQL = """
+        INSERT INTO weight_logs (user_id, date, weight, calories_consumed,
+            calories_burned, exercise_minutes, notes)
+        VALUES (?, ?, ?, ?, ?, ?, ?)
+    """;
+
+    /**
+     * Inserts a log, adds it to its weekly and monthly rollups in the same
+     * transaction and sets its generated id
+     * @return the same log, now carrying its persisted id
+     */
+    @Override
+    public WeightLog saveWeightLog(WeightLog log) throws SQLException {
+        List<GoalMilestone> reached = write(connection -> goalTransaction(connection, c -> {
+            PreparedStatement pstmt = prepareCached(c, INSERT_WEIGHT_LOG_SQL,
+                Statement.RETURN_GENERATED_KEYS);
+            bindWeightLog(pstmt, log);
             pstmt.executeUpdate();
+
+            try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    log.setId(rs.getInt(1));
+                }
+            }
+            Rollups.upsert(prepareCached(c, Rollups.UPSERT_SQL), log);
+            List<GoalMilestone> crossed = evaluateGoals(c, log);
+            saveReachedMilestones(c, crossed);
+            return crossed;
+        }));
+        latestLogCache.invalidate(log.getUserId());
+        notifyMilestones(reached);
+        return log;
+    }
+
+    /**
+     * Streams weight logs into the database through one reused prepared
+     * statement. Rows are sent with addBatch/executeBatch and committed every
+     * chunkSize rows, so a failure only rolls back the current chunk; earlier
+     * chunks stay committed. Each saved log gets its generated id set, and
+     * idSink (which may be null) receives the ids in iteration order, so
+     * arbitrarily long inputs run in constant memory.
+     * Rollups are updated once per chunk, one upsert per user and period.
+     * @return number of logs saved
+     */
+    @Override
+    public long saveWeightLogs(Iterator<WeightLog> logs, int chunkSize, IntConsumer idSink)
+            throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        // Milestones reached by committed chunks, announced once the writer
+        // is released
+        List<GoalMilestone> reached = new ArrayList<>();
+        try {
+            return write(connection -> {
+                long count = 0;
+                WeightLog[] chunk = new WeightLog[chunkSize];
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(false);
+                Rollups.Batch rollups = new Rollups.Batch();
+                int committedReached = 0;
+                try (PreparedStatement pstmt = connection.prepareStatement(INSERT_WEIGHT_LOG_SQL);
+                     PreparedStatement lastId = connection.prepareStatement("SELECT last_insert_rowid()");
+                     PreparedStatement upsert = connection.prepareStatement(Rollups.UPSERT_SQL)) {
+                    while (logs.hasNext()) {
+                        int size = 0;
+                        while (size < chunkSize && logs.hasNext()) {
+                            WeightLog log = logs.next();
+                            bindWeightLog(pstmt, log);
+                            pstmt.addBatch();
+                            rollups.add(log);
+                            chunk[size++] = log;
+                        }
+                        pstmt.executeBatch();
+
+                        // The writer is exclusive and AUTOINCREMENT never reuses
+                        // ids, so rows inserted in one transaction get consecutive
+                        // ids ending at last_insert_rowid()
+                        int firstId;
+                        try (ResultSet rs = lastId.executeQuery()) {
+                            rs.next();
+                            firstId = rs.getInt(1) - size + 1;
+                        }
+                        rollups.flush(upsert);
+                        for (int i = 0; i < size; i++) {
+                            reached.addAll(evaluateGoals(connection, chunk[i]));
+                        }
+                        saveReachedMilestones(connection,
+                            reached.subList(committedReached, reached.size()));
+                        connection.commit();
+                        committedReached = reached.size();
+
+                        int lastUserId = 0;
+                        for (int i = 0; i < size; i++) {
+                            if (i == 0 || chunk[i].getUserId() != lastUserId) {
+                                lastUserId = chunk[i].getUserId();
+                                latestLogCache.invalidate(lastUserId);
+                            }
+                            chunk[i].setId(firstId + i);
+                            if (idSink != null) {
+                                idSink.accept(firstId + i);
+                            }
+                            chunk[i] = null;
+                        }
+                        count += size;
+                    }
+                } catch (SQLException | RuntimeException e) {
+                    connection.rollback();
+                    // Milestones of the rolled-back chunk were only marked in memory
+                    goalProgress.clear();
+                    reached.subList(committedReached, reached.size()).clear();
+                    throw e;
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+                return count;
+            });
+        } finally {
+            notifyMilestones(reached);
+        }
+    }
+
+    /**
+     * Runs a write that evaluates goals in a transaction. If it rolls back,
+     * milestones marked in memory are discarded by reloading goals lazily.
+     */
+    private <T> T goalTransaction(Connection connection, SqlFunction<T> work)
+            throws SQLException {
+        try {
+            return inTransaction(connection, work);
+        } catch (SQLException | RuntimeException e) {
+            goalProgress.clear();
+            throw e;
+        }
+    }
+
+    // Called with the writer held
+    private List<GoalMilestone> evaluateGoals(Connection connection, WeightLog log)
+            throws SQLException {
+        if (!goalProgress.isTracking(log.getUserId())) {
+            goalProgress.track(log.getUserId(), loadWeightGoals(connection, log.getUserId(), true));
+        }
+        return goalProgress.evaluate(log.getUserId(), log.getDate(), log.getWeight());
+    }
+
+    private static void saveReachedMilestones(Connection connection,
+            List<GoalMilestone> reached) throws SQLException {
+        if (reached.isEmpty()) {
+            return;
+        }
+        String milestoneSql = "UPDATE goal_milestones SET reached_date = ? WHERE goal_id = ? AND seq = ?";
+        String goalSql = "UPDATE weight_goals SET active = 0, achieved_date = ? WHERE id = ?";
+        try (PreparedStatement milestoneStmt = connection.prepareStatement(milestoneSql);
+             PreparedStatement goalStmt = connection.prepareStatement(goalSql)) {
+            for (GoalMilestone milestone : reached) {
+                long day = milestone.getReachedDate().toEpochDay();
+                milestoneStmt.setLong(1, day);
+                milestoneStmt.setInt(2, milestone.getGoal().getId());
+                milestoneStmt.setInt(3, milestone.getIndex());
+                milestoneStmt.addBatch();
+                if (milestone.isTarget()) {
+                    goalStmt.setLong(1, day);
+                    goalStmt.setInt(2, milestone.getGoal().getId());
+                    goalStmt.addBatch();
+                }
+            }
+            milestoneStmt.executeBatch();
+            goalStmt.executeBatch();
+        }
+    }
+
+    // The logs are already committed, so a failing listener must not make
+    // the save look failed
+    private void notifyMilestones(List<GoalMilestone> reached) {
+        for (GoalMilestone milestone : reached) {
+            for (Consumer<GoalMilestone> listener : milestoneListeners) {
+                try {
+                    listener.accept(milestone);
+                } catch (RuntimeException e) {
+                    System.err.println("Milestone listener failed: " + e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Registers a callback for milestones reached by saved logs. It runs on
+     * the saving thread after the commit; the milestone and its goal must be
+     * treated as read-only. Exceptions it throws are reported on one line
+     * of standard error, like other non-fatal failures, and otherwise
+     * ignored.
+     */
+    public void addMilestoneListener(Consumer<GoalMilestone> listener) {
+        milestoneListeners.add(listener);
+    }
+
+    public void removeMilestoneListener(Consumer<GoalMilestone> listener) {
+        milestoneListeners.remove(listener);
+    }
+
+    /**
+     * Inserts a goal with its milestones and sets its generated id. Logs
+     * saved from now on are checked against it while it is active.
+     */
+    public WeightGoal saveWeightGoal(WeightGoal goal) throws SQLException {
+        String goalSql = """
+            INSERT INTO weight_goals (user_id, start_weight, target_weight, start_date,
+                deadline, weekly_rate, active, achieved_date)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?)
+        """;
+        String milestoneSql = """
+            INSERT INTO goal_milestones (goal_id, seq, weight, reached_date)
+            VALUES (?, ?, ?, ?)
+        """;
+
+        write(connection -> goalTransaction(connection, c -> {
+            try (PreparedStatement pstmt = c.prepareStatement(goalSql,
+                    Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, goal.getUserId());
+                pstmt.setDouble(2, goal.getStartWeight());
+                pstmt.setDouble(3, goal.getTargetWeight());
+                pstmt.setLong(4, goal.getStartDate().toEpochDay());
+                setEpochDay(pstmt, 5, goal.getDeadline());
+                pstmt.setDouble(6, goal.getWeeklyRate());
+                pstmt.setInt(7, goal.isActive() ? 1 : 0);
+                setEpochDay(pstmt, 8, goal.getAchievedDate());
+                pstmt.executeUpdate();
+
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        goal.setId(rs.getInt(1));
+                    }
+                }
+            }
+            try (PreparedStatement pstmt = c.prepareStatement(milestoneSql)) {
+                for (GoalMilestone milestone : goal.getMilestones()) {
+                    pstmt.setInt(1, goal.getId());
+                    pstmt.setInt(2, milestone.getIndex());
+                    pstmt.setDouble(3, milestone.getWeight());
+                    setEpochDay(pstmt, 4, milestone.getReachedDate());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+            }
+            // Picked up from the database with the user's next log
+            goalProgress.forget(goal.getUserId());
+            return null;
+        }));
+        return goal;
+    }
+
+    /**
+     * Deactivates a goal without achieving it
+     */
+    public void abandonWeightGoal(WeightGoal goal) throws SQLException {
+        String sql = "UPDATE weight_goals SET active = 0 WHERE id = ?";
+        write(connection -> {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, goal.getId());
+                pstmt.executeUpdate();
+            }
+            goalProgress.forget(goal.getUserId());
+            return null;
+        });
+        goal.setActive(false);
+    }
+
+    public List<WeightGoal> getActiveWeightGoals(int userId) throws SQLException {
+        return read(connection -> loadWeightGoals(connection, userId, true));
+    }
+
+    /**
+     * Returns all of the user's goals, including achieved and abandoned
+     * ones, oldest first
+     */
+    public List<WeightGoal> getWeightGoals(int userId) throws SQLException {
+        return read(connection -> loadWeightGoals(connection, userId, false));
+    }
+
+    // With activeOnly both queries filter on active = 1, so they use the
+    // partial index
+    private static List<WeightGoal> loadWeightGoals(Connection connection, int userId,
+            boolean activeOnly) throws SQLException {
+        String filter = activeOnly ? " AND active = 1" : "";
+        String goalSql = "SELECT id, start_weight, target_weight, start_date, deadline,"
+            + " weekly_rate, active, achieved_date FROM weight_goals"
+            + " WHERE user_id = ?" + filter + " ORDER BY id";
+        String milestoneSql = "SELECT goal_id, weight, reached_date FROM goal_milestones"
+            + " WHERE goal_id IN (SELECT id FROM weight_goals WHERE user_id = ?" + filter + ")"
+            + " ORDER BY goal_id, seq";
+
+        List<WeightGoal> goals = new ArrayList<>();
+        try (PreparedStatement pstmt = connection.prepareStatement(goalSql)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    WeightGoal goal = new WeightGoal(userId, rs.getDouble(2), rs.getDouble(3),
+                        LocalDate.ofEpochDay(rs.getLong(4)), getEpochDay(rs, 5), rs.getDouble(6));
+                    goal.setId(rs.getInt(1));
+                    goal.setActive(rs.getInt(7) != 0);
+                    goal.setAchievedDate(getEpochDay(rs, 8));
+                    goals.add(goal);
+                }
+            }
+        }
+        if (goals.isEmpty()) {
+            return goals;
+        }
+
+        try (PreparedStatement pstmt = connection.prepareStatement(milestoneSql)) {
+            pstmt.setInt(1, userId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int goalIndex = 0;
+                List<Double> weights = new ArrayList<>();
+                List<LocalDate> reachedDates = new ArrayList<>();
+                boolean more = rs.next();
+                while (goalIndex < goals.size()) {
+                    WeightGoal goal = goals.get(goalIndex++);
+                    weights.clear();
+                    reachedDates.clear();
+                    while (more && rs.getInt(1) == goal.getId()) {
+                        weights.add(rs.getDouble(2));
+                        reachedDates.add(getEpochDay(rs, 3));
+                        more = rs.next();
+                    }
+                    if (!weights.isEmpty()) {
+                        goal.restoreMilestones(
+                            weights.stream().mapToDouble(Double::doubleValue).toArray(),
+                            reachedDates.toArray(new LocalDate[0]));
+                    }
+                }
+            }
         }
+        return goals;
     }
 
+    private static void setEpochDay(PreparedStatement pstmt, int index, LocalDate date)
+            throws SQLException {
+        if (date == null) {
+            pstmt.setNull(index, Types.INTEGER);
+        } else {
+            pstmt.setLong(index, date.toEpochDay());
+        }
+    }
+
+    private static LocalDate getEpochDay(ResultSet rs, int index) throws SQLException {
+        long day = rs.getLong(index);
+        return rs.wasNull() ? null : LocalDate.ofEpochDay(day);
+    }
+
+    private static void bindWeightLog(PreparedStatement pstmt, WeightLog log) throws SQLException {
+        pstmt.setInt(1, log.getUserId());
+        pstmt.setLong(2, log.getDate().toEpochDay());
+        pstmt.setDouble(3, log.getWeight());
+        pstmt.setInt(4, log.getCaloriesConsumed());
+        pstmt.setInt(5, log.getCaloriesBurned());
+        pstmt.setInt(6, log.getExerciseMinutes());
+        pstmt.setString(7, log.getNotes());
+    }
+
+    private static final String WEIGHT_LOG_COLUMNS = """
+        id, user_id, date, weight, calories_consumed, calories_burned,
+        exercise_minutes, notes
+    """;
+
+    private static final String WEIGHT_LOG_RANGE_SQL = "SELECT " + WEIGHT_LOG_COLUMNS + """
+        FROM weight_logs
+        WHERE user_id = ? AND date BETWEEN ? AND ?
+        ORDER BY date ASC, id ASC
+    """;
+
+    private static final String WEIGHT_LOG_RANGE_PAGE_SQL = WEIGHT_LOG_RANGE_SQL
+        + " LIMIT ? OFFSET ?";
+
+    @Override
     public List<WeightLog> getWeightLogs(int userId, LocalDate startDate, 
             LocalDate endDate) throws SQLException {
-        List<WeightLog> logs = new ArrayList<>();
+        return read(connection -> {
+            List<WeightLog> logs = new ArrayList<>();
+            PreparedStatement pstmt = prepareCached(connection, WEIGHT_LOG_RANGE_SQL);
+            bindRange(pstmt, userId, startDate, endDate);
+            
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    logs.add(readWeightLog(rs));
+                }
+            }
+            return logs;
+        });
+    }
+
+    /**
+     * Returns one page of a date range in (date, id) order, skipping the
+     * first offset rows
+     */
+    @Override
+    public List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate,
+            int offset, int limit) throws SQLException {
+        return read(connection -> {
+            List<WeightLog> logs = new ArrayList<>(limit);
+            PreparedStatement pstmt = prepareCached(connection, WEIGHT_LOG_RANGE_PAGE_SQL);
+            bindRange(pstmt, userId, startDate, endDate);
+            pstmt.setInt(4, limit);
+            pstmt.setInt(5, offset);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    logs.add(readWeightLog(rs));
+                }
+            }
+            return logs;
+        });
+    }
+
+    /**
+     * Keyset pagination over (date, id): returns up to limit logs that sort
+     * after (afterDate, afterId) and are dated no later than endDate. The
+     * index seeks straight to the key, so every page costs the same however
+     * deep into the history it is; only the skip rows after the key are
+     * stepped over. Pass (startDate, 0) for the first page and the last
+     * row's date and id for each following page.
+     */
+    @Override
+    public List<WeightLog> getWeightLogsPage(int userId, LocalDate afterDate, int afterId,
+            LocalDate endDate, int skip, int limit) throws SQLException {
+        String sql = "SELECT " + WEIGHT_LOG_COLUMNS + """
+            FROM weight_logs
+            WHERE user_id = ? AND date >= ? AND date <= ? AND (date > ? OR id > ?)
+            ORDER BY date ASC, id ASC
+            LIMIT ? OFFSET ?
+        """;
+
+        return read(connection -> {
+            List<WeightLog> logs = new ArrayList<>(limit);
+            PreparedStatement pstmt = prepareCached(connection, sql);
+            long afterDay = afterDate.toEpochDay();
+            pstmt.setInt(1, userId);
+            pstmt.setLong(2, afterDay);
+            pstmt.setLong(3, endDate.toEpochDay());
+            pstmt.setLong(4, afterDay);
+            pstmt.setInt(5, afterId);
+            pstmt.setInt(6, limit);
+            pstmt.setInt(7, skip);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    logs.add(readWeightLog(rs));
+                }
+            }
+            return logs;
+        });
+    }
+
+    @Override
+    public int countWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        String sql = "SELECT COUNT(*) FROM weight_logs WHERE user_id = ? AND date BETWEEN ? AND ?";
+
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, sql);
+            bindRange(pstmt, userId, startDate, endDate);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        });
+    }
+
+    @Override
+    public int forEachWeightLog(int userId, LocalDate startDate, LocalDate endDate,
+            WeightLogVisitor visitor) throws SQLException {
+        return forEachWeightLog(userId, startDate, endDate, Constants.DB_FETCH_SIZE, visitor);
+    }
+
+    /**
+     * Walks the logs in a date range in (date, id) order, handing each row's
+     * columns to the visitor without building a list or model objects. The
+     * read connection is held until the walk finishes.
+     * @return number of rows visited
+     */
+    public int forEachWeightLog(int userId, LocalDate startDate, LocalDate endDate,
+            int fetchSize, WeightLogVisitor visitor) throws SQLException {
+        return read(connection -> {
+            int count = 0;
+            try (PreparedStatement pstmt = connection.prepareStatement(WEIGHT_LOG_RANGE_SQL)) {
+                bindRange(pstmt, userId, startDate, endDate);
+                pstmt.setFetchSize(fetchSize);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        visitor.visit(rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getDouble(4),
+                            rs.getInt(5), rs.getInt(6), rs.getInt(7), rs.getString(8));
+                        count++;
+                    }
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Walks every user's logs in (user_id, date, id) order, e.g. for exports
+     * or whole-database analytics, through the same visitor as the ranged
+     * variant
+     * @return number of rows visited
+     */
+    @Override
+    public long forEachWeightLog(WeightLogVisitor visitor) throws SQLException {
+        String sql = "SELECT " + WEIGHT_LOG_COLUMNS + """
+            FROM weight_logs
+            ORDER BY user_id ASC, date ASC, id ASC
+        """;
+
+        return read(connection -> {
+            long count = 0;
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setFetchSize(Constants.DB_FETCH_SIZE);
+
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        visitor.visit(rs.getInt(1), rs.getInt(2), rs.getLong(3), rs.getDouble(4),
+                            rs.getInt(5), rs.getInt(6), rs.getInt(7), rs.getString(8));
+                        count++;
+                    }
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Loads a date range straight from the result set into primitive
+     * columns. Notes are not selected, so no per-row objects are created.
+     */
+    @Override
+    public WeightLogSeries getWeightLogSeries(int userId, LocalDate startDate,
+            LocalDate endDate) throws SQLException {
         String sql = """
-            SELECT * FROM weight_logs 
+            SELECT date, weight, calories_consumed, calories_burned, exercise_minutes
+            FROM weight_logs
             WHERE user_id = ? AND date BETWEEN ? AND ?
-            ORDER BY date ASC
+            ORDER BY date ASC, id ASC
         """;
-        
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setInt(1, userId);
-            pstmt.setString(2, DateUtils.formatForDB(startDate));
-            pstmt.setString(3, DateUtils.formatForDB(endDate));
-            
+
+        return read(connection -> {
+            WeightLogSeries.Builder series = new WeightLogSeries.Builder(userId);
+            PreparedStatement pstmt = prepareCached(connection, sql);
+            bindRange(pstmt, userId, startDate, endDate);
+            pstmt.setFetchSize(Constants.DB_FETCH_SIZE);
+
             try (ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    WeightLog log = new WeightLog(
-                        rs.getInt("user_id"),
-                        DateUtils.parseDBDate(rs.getString("date")),
-                        rs.getDouble("weight"),
-                        rs.getInt("calories_consumed"),
-                        rs.getInt("calories_burned"),
-                        rs.getInt("exercise_minutes")
-                    );
-                    log.setId(rs.getInt("id"));
-                    log.setNotes(rs.getString("notes"));
-                    logs.add(log);
+                    series.add(rs.getInt(1), rs.getDouble(2), rs.getInt(3),
+                        rs.getInt(4), rs.getInt(5));
                 }
             }
+            return series.build();
+        });
+    }
+
+    @Override
+    public Stream<WeightLog> streamWeightLogs(int userId, LocalDate startDate,
+            LocalDate endDate) throws SQLException {
+        return streamWeightLogs(userId, startDate, endDate, Constants.DB_FETCH_SIZE);
+    }
+
+    /**
+     * Lazily streams the logs in a date range in (date, id) order. The stream
+     * holds a pooled read connection until it is closed, so it must be used
+     * in a try-with-resources block. Database errors during iteration surface
+     * as {@link UncheckedSQLException}.
+     */
+    public Stream<WeightLog> streamWeightLogs(int userId, LocalDate startDate,
+            LocalDate endDate, int fetchSize) throws SQLException {
+        ConnectionPool p = pool();
+        Connection connection = p.acquireReader();
+        PreparedStatement pstmt = null;
+        ResultSet rs;
+        try {
+            pstmt = connection.prepareStatement(WEIGHT_LOG_RANGE_SQL);
+            bindRange(pstmt, userId, startDate, endDate);
+            pstmt.setFetchSize(fetchSize);
+            rs = pstmt.executeQuery();
+        } catch (SQLException | RuntimeException e) {
+            if (pstmt != null) {
+                pstmt.close();
+            }
+            p.releaseReader(connection);
+            throw e;
         }
-        return logs;
+
+        PreparedStatement statement = pstmt;
+        Spliterator<WeightLog> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super WeightLog> action) {
+                try {
+                    if (!rs.next()) {
+                        return false;
+                    }
+                    action.accept(readWeightLog(rs));
+                    return true;
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        };
+        AtomicBoolean closed = new AtomicBoolean();
+        return StreamSupport.stream(rows, false).onClose(() -> {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                rs.close();
+                statement.close();
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            } finally {
+                p.releaseReader(connection);
+            }
+        });
+    }
+
+    private static void bindRange(PreparedStatement pstmt, int userId, LocalDate startDate,
+            LocalDate endDate) throws SQLException {
+        pstmt.setInt(1, userId);
+        pstmt.setLong(2, startDate.toEpochDay());
+        pstmt.setLong(3, endDate.toEpochDay());
     }
 
+    /**
+     * Returns the user's weekly or monthly rollups for the periods that
+     * overlap [startDate, endDate], oldest first. Reads one row per period
+     * rather than one per log. Until the initial rollup backfill of an
+     * upgraded database has finished, older periods may be missing.
+     */
+    public List<WeightLogRollup> getWeightLogRollups(int userId, RollupPeriod period,
+            LocalDate startDate, LocalDate endDate) throws SQLException {
+        String sql = """
+            SELECT period_start, log_count, min_weight, max_weight, weight_sum,
+                calories_consumed, calories_burned, exercise_minutes
+            FROM weight_log_rollups
+            WHERE user_id = ? AND period = ? AND period_start BETWEEN ? AND ?
+            ORDER BY period_start ASC
+        """;
+
+        return read(connection -> {
+            List<WeightLogRollup> rollups = new ArrayList<>();
+            PreparedStatement pstmt = prepareCached(connection, sql);
+            pstmt.setInt(1, userId);
+            pstmt.setInt(2, period.getCode());
+            pstmt.setLong(3, period.startOf(startDate).toEpochDay());
+            pstmt.setLong(4, endDate.toEpochDay());
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    rollups.add(new WeightLogRollup(userId, period,
+                        LocalDate.ofEpochDay(rs.getLong(1)), rs.getInt(2), rs.getDouble(3),
+                        rs.getDouble(4), rs.getDouble(5), rs.getLong(6), rs.getLong(7),
+                        rs.getLong(8)));
+                }
+            }
+            return rollups;
+        });
+    }
+
+    /**
+     * Recomputes every user's rollups from the raw logs in one transaction,
+     * e.g. after logs were changed outside this handler
+     * @return number of rollup rows written
+     */
+    public int rebuildRollups() throws SQLException {
+        return write(connection -> inTransaction(connection,
+            c -> Rollups.rebuild(c, Integer.MIN_VALUE, Integer.MAX_VALUE)));
+    }
+
+    /**
+     * Recomputes one user's rollups from their raw logs
+     * @return number of rollup rows written
+     */
+    public int rebuildRollups(int userId) throws SQLException {
+        return write(connection -> inTransaction(connection,
+            c -> Rollups.rebuild(c, userId, userId)));
+    }
+
+    @Override
     public WeightLog getLatestWeightLog(int userId) throws SQLException {
-        String sql = "SELECT * FROM weight_logs WHERE user_id = ? ORDER BY date DESC LIMIT 1";
+        WeightLog cached = latestLogCache.get(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = latestLogCache.stamp();
+        WeightLog log = loadLatestWeightLog(userId);
+        if (log != null) {
+            latestLogCache.putIfFresh(userId, log, stamp);
+        }
+        return log;
+    }
+
+    private WeightLog loadLatestWeightLog(int userId) throws SQLException {
+        String sql = "SELECT " + WEIGHT_LOG_COLUMNS + """
+            FROM weight_logs WHERE user_id = ?
+            ORDER BY date DESC, id DESC LIMIT 1
+        """;
         
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        return read(connection -> {
+            PreparedStatement pstmt = prepareCached(connection, sql);
             pstmt.setInt(1, userId);
             
             try (ResultSet rs = pstmt.executeQuery()) {
                 if (rs.next()) {
-                    WeightLog log = new WeightLog(
-                        rs.getInt("user_id"),
-                        DateUtils.parseDBDate(rs.getString("date")),
-                        rs.getDouble("weight"),
-                        rs.getInt("calories_consumed"),
-                        rs.getInt("calories_burned"),
-                        rs.getInt("exercise_minutes")
-                    );
-                    log.setId(rs.getInt("id"));
-                    log.setNotes(rs.getString("notes"));
-                    return log;
+                    return readWeightLog(rs);
                 }
             }
-        }
-        return null;
+            return null;
+        });
+    }
+
+    // Expects the columns in WEIGHT_LOG_COLUMNS order
+    private static WeightLog readWeightLog(ResultSet rs) throws SQLException {
+        WeightLog log = new WeightLog(
+            rs.getInt(2),
+            LocalDate.ofEpochDay(rs.getLong(3)),
+            rs.getDouble(4),
+            rs.getInt(5),
+            rs.getInt(6),
+            rs.getInt(7)
+        );
+        log.setId(rs.getInt(1));
+        log.setNotes(rs.getString(8));
+        return log;
     }
 }
\ No newline at end of file
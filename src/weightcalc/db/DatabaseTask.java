@@ -0,0 +1,11 @@
+package weightcalc.db;
+
+import java.sql.SQLException;
+
+/**
+ * Work submitted to {@link AsyncDatabaseHandler}
+ */
+@FunctionalInterface
+public interface DatabaseTask<T> {
+    T run(WeightRepository db) throws SQLException;
+}
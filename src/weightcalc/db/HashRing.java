@@ -0,0 +1,95 @@
+package weightcalc.db;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Consistent-hash ring over a fixed list of named nodes. Each node is
+ * placed at many pseudo-random points, and a key belongs to the first point
+ * at or after its own hash. Adding or removing a node therefore only moves
+ * the keys in the arcs next to its points, roughly 1/N of them.
+ *
+ * Points depend only on node names, so two rings built from the same names
+ * agree whatever order the names are given in.
+ */
+final class HashRing {
+    private final long[] points;
+    private final int[] owners;
+
+    HashRing(List<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("A ring needs at least one node");
+        }
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("virtualNodes must be at least 1");
+        }
+        int size = nodes.size() * virtualNodes;
+        long[] hashes = new long[size];
+        int[] nodeOf = new int[size];
+        for (int node = 0; node < nodes.size(); node++) {
+            byte[] name = (nodes.get(node) + '#').getBytes(StandardCharsets.UTF_8);
+            long base = fnv1a(name);
+            for (int v = 0; v < virtualNodes; v++) {
+                hashes[node * virtualNodes + v] = mix(base + v * 0x9E3779B97F4A7C15L);
+                nodeOf[node * virtualNodes + v] = node;
+            }
+        }
+
+        // Sort the points, carrying each one's owner along
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> {
+            int c = Long.compareUnsigned(hashes[a], hashes[b]);
+            // Ties are astronomically unlikely; break them by node name so
+            // the ring never depends on list order
+            return c != 0 ? c : nodes.get(nodeOf[a]).compareTo(nodes.get(nodeOf[b]));
+        });
+        points = new long[size];
+        owners = new int[size];
+        for (int i = 0; i < size; i++) {
+            points[i] = hashes[order[i]];
+            owners[i] = nodeOf[order[i]];
+        }
+    }
+
+    /**
+     * Index, in the list given at construction, of the node owning the key
+     */
+    int nodeFor(int key) {
+        long hash = mix(key);
+        // Binary search for the first point >= hash in unsigned order
+        int low = 0;
+        int high = points.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Long.compareUnsigned(points[mid], hash) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return owners[low == points.length ? 0 : low];
+    }
+
+    private static long fnv1a(byte[] bytes) {
+        long hash = 0xCBF29CE484222325L;
+        for (byte b : bytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001B3L;
+        }
+        return hash;
+    }
+
+    // MurmurHash3 finalizer: spreads consecutive ids over the whole ring
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
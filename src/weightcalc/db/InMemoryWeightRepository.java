@@ -0,0 +1,491 @@
+package weightcalc.db;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+import weightcalc.model.*;
+import weightcalc.util.Constants;
+
+/**
+ * Heap-only {@link WeightRepository}. Each user's logs are kept in a
+ * concurrent skip list of immutable rows ordered by (date, id), so range
+ * reads, keyset pages and the latest log all start with an O(log n) seek
+ * and never block. Counting a range walks it, so it costs O(log n + k)
+ * for k rows in the range. Writes are serialized by one lock, mirroring SQLite's single
+ * writer, and readers may see a bulk insert part-way through.
+ *
+ * Profiles and logs are copied on the way in and out, so callers can
+ * mutate what they get back without affecting the stored data.
+ *
+ * Given a snapshot file, the repository loads it on construction and
+ * writes it back on {@link #close()}; {@link #saveSnapshot()} checkpoints
+ * in between. Snapshots keep the same fields SQLite stores.
+ */
+public class InMemoryWeightRepository implements WeightRepository {
+    private static final int SNAPSHOT_MAGIC = 0x57434C53; // "WCLS"
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final Comparator<Row> ROW_ORDER =
+        Comparator.comparingLong(Row::epochDay).thenComparingInt(Row::id);
+
+    private final ConcurrentSkipListMap<Integer, UserProfile> profiles =
+        new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Integer, NavigableSet<Row>> logs =
+        new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Path snapshotFile;
+    // Guarded by writeLock
+    private int lastProfileId;
+    private int lastLogId;
+
+    private record Row(int id, long epochDay, double weight, int caloriesConsumed,
+            int caloriesBurned, int exerciseMinutes, String notes) {
+
+        static Row of(WeightLog log) {
+            return new Row(log.getId(), log.getDate().toEpochDay(), log.getWeight(),
+                log.getCaloriesConsumed(), log.getCaloriesBurned(), log.getExerciseMinutes(),
+                log.getNotes());
+        }
+
+        // Search key sorting at the given position among a day's rows
+        static Row probe(long epochDay, int id) {
+            return new Row(id, epochDay, 0, 0, 0, 0, null);
+        }
+
+        WeightLog toLog(int userId) {
+            WeightLog log = new WeightLog(userId, LocalDate.ofEpochDay(epochDay), weight,
+                caloriesConsumed, caloriesBurned, exerciseMinutes);
+            log.setId(id);
+            log.setNotes(notes);
+            return log;
+        }
+    }
+
+    public InMemoryWeightRepository() {
+        this.snapshotFile = null;
+    }
+
+    /**
+     * Loads the snapshot if the file exists; it is written back on close
+     */
+    public InMemoryWeightRepository(Path snapshotFile) throws IOException {
+        this.snapshotFile = snapshotFile;
+        if (Files.exists(snapshotFile)) {
+            loadSnapshot(snapshotFile);
+        }
+    }
+
+    // Profiles
+
+    @Override
+    public void saveUserProfile(UserProfile profile) throws SQLException {
+        writeLock.lock();
+        try {
+            profile.setId(++lastProfileId);
+            profiles.put(profile.getId(), UserProfile.copyOf(profile));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void updateUserProfile(UserProfile profile) throws SQLException {
+        writeLock.lock();
+        try {
+            profiles.replace(profile.getId(), UserProfile.copyOf(profile));
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public UserProfile getUserProfile(int id) throws SQLException {
+        UserProfile profile = profiles.get(id);
+        return profile == null ? null : UserProfile.copyOf(profile);
+    }
+
+    @Override
+    public int forEachUserProfile(Consumer<UserProfile> consumer) throws SQLException {
+        int count = 0;
+        for (UserProfile profile : profiles.values()) {
+            consumer.accept(UserProfile.copyOf(profile));
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public int restoreUserProfiles(Iterator<UserProfile> restored) throws SQLException {
+        List<UserProfile> batch = new ArrayList<>();
+        restored.forEachRemaining(profile -> batch.add(UserProfile.copyOf(profile)));
+        writeLock.lock();
+        try {
+            Set<Integer> ids = new HashSet<>();
+            for (UserProfile profile : batch) {
+                if (profiles.containsKey(profile.getId()) || !ids.add(profile.getId())) {
+                    throw new SQLIntegrityConstraintViolationException(
+                        "User profile id " + profile.getId() + " is already taken");
+                }
+            }
+            for (UserProfile profile : batch) {
+                profiles.put(profile.getId(), profile);
+                lastProfileId = Math.max(lastProfileId, profile.getId());
+            }
+            return batch.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteUserProfile(int id) throws SQLException {
+        writeLock.lock();
+        try {
+            logs.remove(id);
+            return profiles.remove(id) != null;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Weight logs
+
+    @Override
+    public WeightLog saveWeightLog(WeightLog log) throws SQLException {
+        writeLock.lock();
+        try {
+            requireProfile(log.getUserId());
+            log.setId(++lastLogId);
+            userLogs(log.getUserId()).add(Row.of(log));
+        } finally {
+            writeLock.unlock();
+        }
+        return log;
+    }
+
+    /**
+     * Inserts logs a chunk at a time. Every row of a chunk is checked before
+     * any is added, so a bad row leaves its whole chunk unsaved.
+     */
+    @Override
+    public long saveWeightLogs(Iterator<WeightLog> input, int chunkSize, IntConsumer idSink)
+            throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        long count = 0;
+        List<WeightLog> chunk = new ArrayList<>(Math.min(chunkSize, Constants.DB_BATCH_CHUNK_SIZE));
+        while (input.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < chunkSize && input.hasNext()) {
+                chunk.add(input.next());
+            }
+            writeLock.lock();
+            try {
+                for (WeightLog log : chunk) {
+                    requireProfile(log.getUserId());
+                }
+                for (WeightLog log : chunk) {
+                    log.setId(++lastLogId);
+                    userLogs(log.getUserId()).add(Row.of(log));
+                }
+            } finally {
+                writeLock.unlock();
+            }
+            if (idSink != null) {
+                for (WeightLog log : chunk) {
+                    idSink.accept(log.getId());
+                }
+            }
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    // Called with the write lock held
+    private void requireProfile(int userId) throws SQLException {
+        if (!profiles.containsKey(userId)) {
+            throw new SQLIntegrityConstraintViolationException(
+                "No user profile with id " + userId);
+        }
+    }
+
+    // Called with the write lock held
+    private NavigableSet<Row> userLogs(int userId) {
+        return logs.computeIfAbsent(userId, id -> new ConcurrentSkipListSet<>(ROW_ORDER));
+    }
+
+    private NavigableSet<Row> range(int userId, LocalDate startDate, LocalDate endDate) {
+        return range(userId, Row.probe(startDate.toEpochDay(), Integer.MIN_VALUE), true,
+            endDate.toEpochDay());
+    }
+
+    private NavigableSet<Row> range(int userId, Row from, boolean inclusive, long endDay) {
+        NavigableSet<Row> rows = logs.get(userId);
+        if (rows == null || from.epochDay() > endDay) {
+            return Collections.emptyNavigableSet();
+        }
+        return rows.subSet(from, inclusive, Row.probe(endDay, Integer.MAX_VALUE), true);
+    }
+
+    @Override
+    public List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        List<WeightLog> result = new ArrayList<>();
+        for (Row row : range(userId, startDate, endDate)) {
+            result.add(row.toLog(userId));
+        }
+        return result;
+    }
+
+    @Override
+    public List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate,
+            int offset, int limit) throws SQLException {
+        List<WeightLog> result = new ArrayList<>(limit);
+        int skipped = 0;
+        for (Row row : range(userId, startDate, endDate)) {
+            if (result.size() == limit) {
+                break;
+            }
+            if (skipped < offset) {
+                skipped++;
+            } else {
+                result.add(row.toLog(userId));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<WeightLog> getWeightLogsPage(int userId, LocalDate afterDate, int afterId,
+            LocalDate endDate, int skip, int limit) throws SQLException {
+        List<WeightLog> result = new ArrayList<>(limit);
+        Row after = Row.probe(afterDate.toEpochDay(), afterId);
+        int skipped = 0;
+        for (Row row : range(userId, after, false, endDate.toEpochDay())) {
+            if (result.size() == limit) {
+                break;
+            }
+            if (skipped < skip) {
+                skipped++;
+            } else {
+                result.add(row.toLog(userId));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public int countWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        return range(userId, startDate, endDate).size();
+    }
+
+    @Override
+    public int forEachWeightLog(int userId, LocalDate startDate, LocalDate endDate,
+            WeightLogVisitor visitor) throws SQLException {
+        int count = 0;
+        for (Row row : range(userId, startDate, endDate)) {
+            visit(visitor, userId, row);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long forEachWeightLog(WeightLogVisitor visitor) throws SQLException {
+        long count = 0;
+        for (Map.Entry<Integer, NavigableSet<Row>> user : logs.entrySet()) {
+            for (Row row : user.getValue()) {
+                visit(visitor, user.getKey(), row);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void visit(WeightLogVisitor visitor, int userId, Row row) {
+        visitor.visit(row.id(), userId, row.epochDay(), row.weight(), row.caloriesConsumed(),
+            row.caloriesBurned(), row.exerciseMinutes(), row.notes());
+    }
+
+    @Override
+    public WeightLogSeries getWeightLogSeries(int userId, LocalDate startDate,
+            LocalDate endDate) throws SQLException {
+        WeightLogSeries.Builder series = new WeightLogSeries.Builder(userId);
+        for (Row row : range(userId, startDate, endDate)) {
+            series.add((int) row.epochDay(), row.weight(), row.caloriesConsumed(),
+                row.caloriesBurned(), row.exerciseMinutes());
+        }
+        return series.build();
+    }
+
+    @Override
+    public Stream<WeightLog> streamWeightLogs(int userId, LocalDate startDate,
+            LocalDate endDate) throws SQLException {
+        return range(userId, startDate, endDate).stream().map(row -> row.toLog(userId));
+    }
+
+    @Override
+    public WeightLog getLatestWeightLog(int userId) throws SQLException {
+        // Rows are never removed from a user's set, only the whole set
+        NavigableSet<Row> rows = logs.get(userId);
+        return rows == null || rows.isEmpty() ? null : rows.last().toLog(userId);
+    }
+
+    // Snapshots
+
+    /**
+     * Writes a snapshot to the file given at construction
+     */
+    public void saveSnapshot() throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("No snapshot file configured");
+        }
+        saveSnapshot(snapshotFile);
+    }
+
+    /**
+     * Writes every profile and log to a temporary file, syncs it and moves
+     * it over the target, so a crash leaves either the old snapshot or the
+     * new one. Writers wait while the snapshot is taken; readers do not.
+     */
+    public void saveSnapshot(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        writeLock.lock();
+        try (FileOutputStream fileOut = new FileOutputStream(temp.toFile())) {
+            DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(fileOut, Constants.IO_BUFFER_SIZE));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_VERSION);
+            out.writeInt(lastProfileId);
+            out.writeInt(lastLogId);
+
+            out.writeInt(profiles.size());
+            for (UserProfile profile : profiles.values()) {
+                out.writeInt(profile.getId());
+                out.writeDouble(profile.getHeight());
+                out.writeDouble(profile.getCurrentWeight());
+                out.writeDouble(profile.getTargetWeight());
+                out.writeInt(profile.getAge());
+                out.writeInt(profile.getGender().getCode());
+                out.writeInt(profile.getActivityLevel().getCode());
+            }
+
+            out.writeInt(logs.size());
+            for (Map.Entry<Integer, NavigableSet<Row>> user : logs.entrySet()) {
+                NavigableSet<Row> rows = user.getValue();
+                out.writeInt(user.getKey());
+                out.writeInt(rows.size());
+                for (Row row : rows) {
+                    out.writeInt(row.id());
+                    out.writeLong(row.epochDay());
+                    out.writeDouble(row.weight());
+                    out.writeInt(row.caloriesConsumed());
+                    out.writeInt(row.caloriesBurned());
+                    out.writeInt(row.exerciseMinutes());
+                    if (row.notes() == null) {
+                        out.writeInt(-1);
+                    } else {
+                        byte[] notes = row.notes().getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(notes.length);
+                        out.write(notes);
+                    }
+                }
+            }
+            out.flush();
+            fileOut.getChannel().force(true);
+        } finally {
+            writeLock.unlock();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void loadSnapshot(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file), Constants.IO_BUFFER_SIZE))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(file + " is not a weight log snapshot");
+            }
+            int version = in.readInt();
+            if (version != SNAPSHOT_VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            lastProfileId = in.readInt();
+            lastLogId = in.readInt();
+
+            int profileCount = in.readInt();
+            for (int i = 0; i < profileCount; i++) {
+                int id = in.readInt();
+                UserProfile profile = new UserProfile(in.readDouble(), in.readDouble(),
+                    in.readDouble(), in.readInt(), Gender.fromCode(in.readInt()),
+                    ActivityLevel.fromCode(in.readInt()));
+                profile.setId(id);
+                profiles.put(id, profile);
+            }
+
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                int userId = in.readInt();
+                int rowCount = in.readInt();
+                NavigableSet<Row> rows = userLogs(userId);
+                for (int j = 0; j < rowCount; j++) {
+                    int id = in.readInt();
+                    long epochDay = in.readLong();
+                    double weight = in.readDouble();
+                    int consumed = in.readInt();
+                    int burned = in.readInt();
+                    int minutes = in.readInt();
+                    int notesLength = in.readInt();
+                    String notes = null;
+                    if (notesLength >= 0) {
+                        notes = new String(in.readNBytes(notesLength), StandardCharsets.UTF_8);
+                    }
+                    rows.add(new Row(id, epochDay, weight, consumed, burned, minutes, notes));
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the snapshot back if a snapshot file was given
+     */
+    @Override
+    public void close() {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            saveSnapshot();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write snapshot " + snapshotFile, e);
+        }
+    }
+}
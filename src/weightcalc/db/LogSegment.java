@@ -0,0 +1,613 @@
+package weightcalc.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+import weightcalc.model.WeightLog;
+import weightcalc.util.Constants;
+
+/**
+ * One user's weight logs for {@link MappedWeightRepository}: an append-only
+ * file of fixed-width records, memory-mapped, plus a side heap file holding
+ * the notes. Files are named {@code <userId>.<generation>.seg} and
+ * {@code .notes}; a rewrite produces the next generation.
+ *
+ * Records appended in (date, id) order form a sorted prefix, over which a
+ * sparse index keeps the epoch day of every stride-th record, so a range
+ * read seeks with a binary search on the heap and then reads the mapping
+ * sequentially. Records appended out of order form an unsorted tail that
+ * scans merge in; {@link #needsRewrite} reports when it has grown enough to
+ * be worth sorting away.
+ *
+ * Appends stay invisible to readers until {@link #sync} has forced the
+ * notes and then the records to disk and {@link #publish} has made them
+ * visible. Every record carries a CRC, and on open the file is read up to
+ * the first record that fails it, which drops a tail torn by a crash.
+ *
+ * Writer methods must be called under the repository's write lock; reads
+ * work on an immutable view and take no locks. Readers pin the segment
+ * with {@link #retain} so that the files stay open while they read; the
+ * owner's reference is dropped with {@link #release} once the segment is
+ * replaced, and the last one out closes it.
+ */
+final class LogSegment {
+    static final String RECORDS_SUFFIX = ".seg";
+    static final String NOTES_SUFFIX = ".notes";
+    static final String TEMP_SUFFIX = ".tmp";
+
+    // Record layout; the CRC covers bytes 0..43
+    private static final int RECORD_SIZE = 48;
+    private static final int ID = 0;            // int
+    private static final int EPOCH_DAY = 4;     // int
+    private static final int WEIGHT = 8;        // double
+    private static final int CONSUMED = 16;     // int
+    private static final int BURNED = 20;       // int
+    private static final int MINUTES = 24;      // int
+    private static final int NOTES_LENGTH = 28; // int, -1 for no notes
+    private static final int NOTES_OFFSET = 32; // long
+    private static final int CRC = 44;          // int; bytes 40..43 are reserved
+
+    private static final int STRIDE = Constants.LOG_SEGMENT_INDEX_STRIDE;
+
+    private final int userId;
+    private final int generation;
+    private Path recordsPath;
+    private final Path notesPath;
+    private final FileChannel records;
+    private final FileChannel notes;
+    private final CRC32C crc = new CRC32C();
+    // The owner's reference plus one per reader; 0 once closed
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    // Writer state, ahead of the view by the uncommitted appends
+    private MappedByteBuffer buffer;
+    private int pendingCount;
+    private int pendingSorted;
+    private int[] index = new int[8];
+    private long notesSize;
+    private long committedNotesSize;
+
+    private record View(MappedByteBuffer buffer, int count, int sortedCount, int[] index) {}
+
+    private volatile View view;
+
+    private LogSegment(int userId, int generation, Path recordsPath, Path notesPath,
+            int capacity) throws IOException {
+        this.userId = userId;
+        this.generation = generation;
+        this.recordsPath = recordsPath;
+        this.notesPath = notesPath;
+        this.records = FileChannel.open(recordsPath, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.notes = FileChannel.open(notesPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            records.close();
+            throw e;
+        }
+        long fileRecords = records.size() / RECORD_SIZE;
+        int mapped = (int) Math.max(Math.max(capacity, fileRecords),
+            Constants.LOG_SEGMENT_INITIAL_RECORDS);
+        this.buffer = records.map(FileChannel.MapMode.READ_WRITE, 0, (long) mapped * RECORD_SIZE);
+        this.notesSize = notes.size();
+        this.committedNotesSize = notesSize;
+    }
+
+    static Path recordsPath(Path directory, int userId, int generation) {
+        return directory.resolve(userId + "." + generation + RECORDS_SUFFIX);
+    }
+
+    static Path notesPath(Path directory, int userId, int generation) {
+        return directory.resolve(userId + "." + generation + NOTES_SUFFIX);
+    }
+
+    /**
+     * Opens a segment, creating empty files if needed, and recovers it:
+     * records are read up to the first torn one, and anything after that
+     * is zeroed so it can never be mistaken for data later
+     */
+    static LogSegment open(Path directory, int userId, int generation) throws IOException {
+        LogSegment segment = new LogSegment(userId, generation,
+            recordsPath(directory, userId, generation), notesPath(directory, userId, generation),
+            0);
+        try {
+            segment.recover();
+        } catch (IOException | RuntimeException e) {
+            segment.close();
+            throw e;
+        }
+        return segment;
+    }
+
+    private void recover() throws IOException {
+        int fileRecords = (int) Math.min(records.size() / RECORD_SIZE, buffer.capacity() / RECORD_SIZE);
+        int count = 0;
+        while (count < fileRecords && isIntact(count)) {
+            count++;
+        }
+        // Appends are sequential, so past the first all-zero record the
+        // file was never written
+        boolean zeroed = false;
+        for (int i = count; i < fileRecords && !isZero(i); i++) {
+            buffer.put(i * RECORD_SIZE, new byte[RECORD_SIZE]);
+            zeroed = true;
+        }
+        if (zeroed) {
+            buffer.force();
+        }
+
+        for (int i = 0; i < count; i++) {
+            track(i);
+            pendingCount++;
+        }
+        commitView();
+    }
+
+    private boolean isIntact(int record) {
+        int position = record * RECORD_SIZE;
+        if (buffer.getInt(position + CRC) != checksum(position)) {
+            return false;
+        }
+        int length = buffer.getInt(position + NOTES_LENGTH);
+        long offset = buffer.getLong(position + NOTES_OFFSET);
+        return length == -1 || (length >= 0 && offset >= 0 && offset + length <= notesSize);
+    }
+
+    private boolean isZero(int record) {
+        int position = record * RECORD_SIZE;
+        for (int i = 0; i < RECORD_SIZE; i += 8) {
+            if (buffer.getLong(position + i) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int checksum(int position) {
+        crc.reset();
+        crc.update(buffer.slice(position, CRC));
+        return (int) crc.getValue();
+    }
+
+    int getUserId() {
+        return userId;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    // Writer side
+
+    /**
+     * Writes a record (and its notes) without publishing it
+     */
+    void append(WeightLog log) throws IOException {
+        int epochDay = Math.toIntExact(log.getDate().toEpochDay());
+        ensureCapacity(pendingCount + 1);
+
+        int notesLength = -1;
+        long notesOffset = 0;
+        if (log.getNotes() != null) {
+            byte[] bytes = log.getNotes().getBytes(StandardCharsets.UTF_8);
+            writeFully(notes, ByteBuffer.wrap(bytes), notesSize);
+            notesLength = bytes.length;
+            notesOffset = notesSize;
+            notesSize += bytes.length;
+        }
+
+        int position = pendingCount * RECORD_SIZE;
+        buffer.putInt(position + ID, log.getId());
+        buffer.putInt(position + EPOCH_DAY, epochDay);
+        buffer.putDouble(position + WEIGHT, log.getWeight());
+        buffer.putInt(position + CONSUMED, log.getCaloriesConsumed());
+        buffer.putInt(position + BURNED, log.getCaloriesBurned());
+        buffer.putInt(position + MINUTES, log.getExerciseMinutes());
+        buffer.putInt(position + NOTES_LENGTH, notesLength);
+        buffer.putLong(position + NOTES_OFFSET, notesOffset);
+        buffer.putInt(position + 40, 0);
+        buffer.putInt(position + CRC, checksum(position));
+        track(pendingCount);
+        pendingCount++;
+    }
+
+    // Extends the sorted prefix and its index if the record continues it
+    private void track(int record) {
+        if (pendingSorted != record) {
+            return;
+        }
+        if (record > 0 && compare(buffer, record, buffer, record - 1) < 0) {
+            return;
+        }
+        if (record % STRIDE == 0) {
+            int slot = record / STRIDE;
+            if (slot == index.length) {
+                index = Arrays.copyOf(index, slot * 2);
+            }
+            index[slot] = buffer.getInt(record * RECORD_SIZE + EPOCH_DAY);
+        }
+        pendingSorted++;
+    }
+
+    private void ensureCapacity(int recordCount) throws IOException {
+        if ((long) recordCount * RECORD_SIZE <= buffer.capacity()) {
+            return;
+        }
+        long capacity = Math.max((long) buffer.capacity() * 2, (long) recordCount * RECORD_SIZE);
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Segment for user " + userId + " is full");
+        }
+        // Readers keep the old mapping; it shows the same file pages
+        buffer = records.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Forces the notes and then the new records to disk and publishes them
+     */
+    void commit() throws IOException {
+        sync();
+        publish();
+    }
+
+    /**
+     * Forces the notes and then the appended records to disk without
+     * publishing them, so several segments can be made durable before any
+     * of them becomes visible
+     */
+    void sync() throws IOException {
+        View current = view;
+        if (notesSize != committedNotesSize) {
+            notes.force(false);
+        }
+        if (pendingCount > current.count()) {
+            int from = current.count() * RECORD_SIZE;
+            buffer.force(from, pendingCount * RECORD_SIZE - from);
+        }
+    }
+
+    /**
+     * Makes synced appends visible to readers
+     */
+    void publish() {
+        commitView();
+    }
+
+    private void commitView() {
+        committedNotesSize = notesSize;
+        view = new View(buffer, pendingCount, pendingSorted, index);
+    }
+
+    /**
+     * Drops appends made since the last publish. The records are zeroed on
+     * disk too, since they may already have been synced; dropped notes stay
+     * in the heap until overwritten, but nothing points at them.
+     */
+    void rollback() throws IOException {
+        View current = view;
+        int appended = pendingCount - current.count();
+        for (int i = current.count(); i < pendingCount; i++) {
+            buffer.put(i * RECORD_SIZE, new byte[RECORD_SIZE]);
+        }
+        pendingCount = current.count();
+        pendingSorted = current.sortedCount();
+        notesSize = committedNotesSize;
+        if (appended > 0) {
+            buffer.force(current.count() * RECORD_SIZE, appended * RECORD_SIZE);
+        }
+    }
+
+    /**
+     * True once the unsorted tail is long enough that scans pay noticeably
+     * for merging it
+     */
+    boolean needsRewrite() {
+        View v = view;
+        int unsorted = v.count() - v.sortedCount();
+        return unsorted > STRIDE && unsorted > v.count() / 8;
+    }
+
+    /**
+     * Writes the committed records in (date, id) order, with only the notes
+     * they still reference, as the next generation. The new records file
+     * only gets its final name once fully synced, which is the commit
+     * point; the old files are deleted afterwards. This segment stays
+     * readable until its last reference is released.
+     */
+    LogSegment rewrite(Path directory) throws IOException {
+        View v = view;
+        Integer[] order = new Integer[v.count()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> compare(v.buffer(), a, v.buffer(), b));
+
+        int next = generation + 1;
+        Path finalPath = recordsPath(directory, userId, next);
+        Path tempPath = finalPath.resolveSibling(finalPath.getFileName() + TEMP_SUFFIX);
+        Path nextNotes = notesPath(directory, userId, next);
+        Files.deleteIfExists(tempPath);
+        Files.deleteIfExists(nextNotes);
+        LogSegment target = new LogSegment(userId, next, tempPath, nextNotes, order.length);
+        try {
+            target.commitView();
+            for (int record : order) {
+                target.append(read(v, record, true));
+            }
+            target.commit();
+            Files.move(tempPath, finalPath, StandardCopyOption.ATOMIC_MOVE);
+            target.recordsPath = finalPath;
+        } catch (IOException | RuntimeException e) {
+            target.close();
+            Files.deleteIfExists(tempPath);
+            Files.deleteIfExists(nextNotes);
+            throw e;
+        }
+        deleteFiles();
+        return target;
+    }
+
+    /**
+     * Removes the files; open channels and mappings keep working until the
+     * segment is closed
+     */
+    void deleteFiles() throws IOException {
+        Files.deleteIfExists(recordsPath);
+        Files.deleteIfExists(notesPath);
+    }
+
+    /**
+     * Pins the segment for a read
+     * @return false if it has already been closed; the caller should look
+     *         up the segment that replaced it
+     */
+    boolean retain() {
+        while (true) {
+            int current = references.get();
+            if (current == 0) {
+                return false;
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * True if only the owner holds a reference
+     */
+    boolean isIdle() {
+        return references.get() == 1;
+    }
+
+    /**
+     * Drops a reader's or the owner's reference, closing the files when it
+     * was the last one
+     */
+    void release() throws IOException {
+        if (references.decrementAndGet() == 0) {
+            close();
+        }
+    }
+
+    /**
+     * Closes the files regardless of readers; the mapping itself is freed
+     * once the segment is no longer reachable
+     */
+    void close() throws IOException {
+        references.set(0);
+        try {
+            records.close();
+        } finally {
+            notes.close();
+        }
+    }
+
+    // Reader side
+
+    int size() {
+        return view.count();
+    }
+
+    /**
+     * Highest record id, or 0 if empty
+     */
+    int maxId() {
+        View v = view;
+        int max = 0;
+        for (int i = 0; i < v.count(); i++) {
+            max = Math.max(max, v.buffer().getInt(i * RECORD_SIZE + ID));
+        }
+        return max;
+    }
+
+    /**
+     * Visits records with (date, id) >= (startDay, startId) and date <=
+     * endDay in (date, id) order, skipping the first skip and stopping
+     * after limit. Notes are only read from the heap if withNotes is set.
+     * @return number of records visited
+     */
+    int scan(long startDay, long startId, long endDay, int skip, int limit, boolean withNotes,
+            WeightLogVisitor visitor) throws IOException {
+        View v = view;
+        if (startDay > endDay || limit <= 0) {
+            return 0;
+        }
+        int next = lowerBound(v, startDay, startId);
+        int[] tail = tailMatches(v, startDay, startId, endDay);
+        int t = 0;
+        int skipped = 0;
+        int visited = 0;
+        while (visited < limit) {
+            boolean fromPrefix = next < v.sortedCount() && day(v, next) <= endDay;
+            if (!fromPrefix && t == tail.length) {
+                break;
+            }
+            int record;
+            if (fromPrefix && (t == tail.length || compare(v.buffer(), next, v.buffer(), tail[t]) < 0)) {
+                record = next++;
+            } else {
+                record = tail[t++];
+            }
+            if (skipped < skip) {
+                skipped++;
+                continue;
+            }
+            visit(v, record, withNotes, visitor);
+            visited++;
+        }
+        return visited;
+    }
+
+    /**
+     * Number of records dated within [startDay, endDay], counted from the
+     * index positions without reading the sorted records in between
+     */
+    int count(long startDay, long endDay) {
+        View v = view;
+        if (startDay > endDay) {
+            return 0;
+        }
+        int from = lowerBound(v, startDay, Long.MIN_VALUE);
+        int to = lowerBound(v, endDay + 1, Long.MIN_VALUE);
+        return to - from + tailMatches(v, startDay, Long.MIN_VALUE, endDay).length;
+    }
+
+    /**
+     * Visits the record with the greatest (date, id), if any
+     * @return false if the segment is empty
+     */
+    boolean latest(WeightLogVisitor visitor) throws IOException {
+        View v = view;
+        if (v.count() == 0) {
+            return false;
+        }
+        // The first record always starts the sorted prefix
+        int best = v.sortedCount() - 1;
+        for (int i = v.sortedCount(); i < v.count(); i++) {
+            if (compare(v.buffer(), i, v.buffer(), best) > 0) {
+                best = i;
+            }
+        }
+        visit(v, best, true, visitor);
+        return true;
+    }
+
+    // First position in the sorted prefix whose key is >= (day, id)
+    private static int lowerBound(View v, long day, long id) {
+        int[] index = v.index();
+        int blocks = (v.sortedCount() + STRIDE - 1) / STRIDE;
+        // Last block starting strictly before the day; the key cannot be
+        // in any earlier block
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (index[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int position = Math.max(low - 1, 0) * STRIDE;
+        while (position < v.sortedCount() && compareKey(v, position, day, id) < 0) {
+            position++;
+        }
+        return position;
+    }
+
+    // Unsorted-tail records in range, in (date, id) order
+    private static int[] tailMatches(View v, long startDay, long startId, long endDay) {
+        int[] matches = new int[v.count() - v.sortedCount()];
+        int size = 0;
+        for (int i = v.sortedCount(); i < v.count(); i++) {
+            if (compareKey(v, i, startDay, startId) >= 0 && day(v, i) <= endDay) {
+                matches[size++] = i;
+            }
+        }
+        if (size == 0) {
+            return new int[0];
+        }
+        Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = matches[i];
+        }
+        Arrays.sort(boxed, (a, b) -> compare(v.buffer(), a, v.buffer(), b));
+        int[] sorted = new int[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = boxed[i];
+        }
+        return sorted;
+    }
+
+    private static int day(View v, int record) {
+        return v.buffer().getInt(record * RECORD_SIZE + EPOCH_DAY);
+    }
+
+    private static int compareKey(View v, int record, long day, long id) {
+        int c = Long.compare(day(v, record), day);
+        return c != 0 ? c : Long.compare(v.buffer().getInt(record * RECORD_SIZE + ID), id);
+    }
+
+    private static int compare(ByteBuffer a, int recordA, ByteBuffer b, int recordB) {
+        int c = Integer.compare(a.getInt(recordA * RECORD_SIZE + EPOCH_DAY),
+            b.getInt(recordB * RECORD_SIZE + EPOCH_DAY));
+        return c != 0 ? c : Integer.compare(a.getInt(recordA * RECORD_SIZE + ID),
+            b.getInt(recordB * RECORD_SIZE + ID));
+    }
+
+    private void visit(View v, int record, boolean withNotes, WeightLogVisitor visitor)
+            throws IOException {
+        ByteBuffer b = v.buffer();
+        int position = record * RECORD_SIZE;
+        visitor.visit(b.getInt(position + ID), userId, b.getInt(position + EPOCH_DAY),
+            b.getDouble(position + WEIGHT), b.getInt(position + CONSUMED),
+            b.getInt(position + BURNED), b.getInt(position + MINUTES),
+            withNotes ? readNotes(b, position) : null);
+    }
+
+    private WeightLog read(View v, int record, boolean withNotes) throws IOException {
+        WeightLog[] result = new WeightLog[1];
+        visit(v, record, withNotes, (id, user, day, weight, consumed, burned, minutes, text) -> {
+            WeightLog log = new WeightLog(user, LocalDate.ofEpochDay(day), weight,
+                consumed, burned, minutes);
+            log.setId(id);
+            log.setNotes(text);
+            result[0] = log;
+        });
+        return result[0];
+    }
+
+    private String readNotes(ByteBuffer b, int position) throws IOException {
+        int length = b.getInt(position + NOTES_LENGTH);
+        if (length < 0) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        long offset = b.getLong(position + NOTES_OFFSET);
+        // Positional reads do not move the channel, so readers can share it
+        while (bytes.hasRemaining()) {
+            if (notes.read(bytes, offset + bytes.position()) < 0) {
+                throw new IOException("Notes heap of user " + userId + " is truncated");
+            }
+        }
+        return new String(bytes.array(), StandardCharsets.UTF_8);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer bytes, long position)
+            throws IOException {
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package weightcalc.db;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Thread-safe, size-bounded LRU cache with hit/miss/eviction counters.
+ *
+ * Loads race with invalidations: a reader may fetch a row, a writer then
+ * changes and invalidates it, and the reader stores the stale copy. To rule
+ * that out, take a {@link #stamp()} before loading and store the result with
+ * {@link #putIfFresh}, which drops it if anything was invalidated meanwhile.
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    private final LinkedHashMap<K, V> entries;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public LruCache(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized V get(K key) {
+        V value = entries.get(key);
+        if (value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    public synchronized void put(K key, V value) {
+        entries.put(key, value);
+    }
+
+    public synchronized long stamp() {
+        return generation;
+    }
+
+    /**
+     * Stores a value loaded after {@code stamp} was taken, unless an
+     * invalidation happened in between
+     */
+    public synchronized void putIfFresh(K key, V value, long stamp) {
+        if (stamp == generation) {
+            entries.put(key, value);
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        generation++;
+        entries.remove(key);
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+    }
+
+    public synchronized int size() { return entries.size(); }
+    public int getMaxSize() { return maxSize; }
+    public synchronized long getHitCount() { return hits; }
+    public synchronized long getMissCount() { return misses; }
+    public synchronized long getEvictionCount() { return evictions; }
+}
@@ -0,0 +1,619 @@
+package weightcalc.db;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.Stream;
+import weightcalc.model.*;
+import weightcalc.util.Constants;
+
+/**
+ * {@link WeightRepository} that stores each user's weight logs in an
+ * append-only, memory-mapped {@link LogSegment} instead of a B-tree.
+ * Saving a log writes one fixed-width record and syncs it; a range read is
+ * an index seek followed by a sequential read of the mapping. Profiles are
+ * kept in a small {@link ProfileLog} and served from memory.
+ *
+ * Layout of the directory:
+ * <pre>
+ * profiles.log                 profile records
+ * logs/&lt;user&gt;.&lt;gen&gt;.seg     weight log records of one user
+ * logs/&lt;user&gt;.&lt;gen&gt;.notes   notes heap of that segment
+ * </pre>
+ *
+ * Opening the directory recovers it: torn record tails are cut off,
+ * half-finished rewrites are discarded, and segments of deleted profiles
+ * are removed. {@link #compact()} sorts every segment and drops notes and
+ * profile records that nothing refers to any more.
+ *
+ * Like the SQLite engine, writes are serialized and each save (or each
+ * chunk of a bulk save) is durable when the call returns; reads take no
+ * locks and see only committed records.
+ *
+ * Segments are opened on first use and kept in an LRU of at most
+ * maxOpenSegments, so file descriptors do not grow with the number of
+ * users. A segment that is evicted, replaced by a rewrite or dropped with
+ * its profile is closed as soon as the last read still using it finishes;
+ * segments pinned by a read or a write are never evicted.
+ */
+public class MappedWeightRepository implements WeightRepository {
+    private static final String PROFILES_FILE = "profiles.log";
+    private static final String LOGS_DIRECTORY = "logs";
+
+    private final Path logsDirectory;
+    private final ConcurrentSkipListMap<Integer, UserProfile> profiles =
+        new ConcurrentSkipListMap<>();
+    // Current segment generation of every user with logs
+    private final ConcurrentSkipListMap<Integer, Integer> generations =
+        new ConcurrentSkipListMap<>();
+    // Open segments in access order, each holding the repository's
+    // reference; guarded by its own monitor
+    private final LinkedHashMap<Integer, LogSegment> openSegments =
+        new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxOpenSegments;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ProfileLog profileLog;
+    // Guarded by writeLock
+    private int lastLogId;
+
+    public MappedWeightRepository(Path directory) throws IOException {
+        this(directory, Constants.LOG_SEGMENT_OPEN_LIMIT);
+    }
+
+    public MappedWeightRepository(Path directory, int maxOpenSegments) throws IOException {
+        if (maxOpenSegments < 1) {
+            throw new IllegalArgumentException("maxOpenSegments must be at least 1");
+        }
+        this.maxOpenSegments = maxOpenSegments;
+        this.logsDirectory = directory.resolve(LOGS_DIRECTORY);
+        Files.createDirectories(logsDirectory);
+        this.profileLog = ProfileLog.open(directory.resolve(PROFILES_FILE), profiles);
+        try {
+            findSegments();
+            lastLogId = profileLog.getLastLogId();
+            // Recovers every segment once, and finds the highest log id
+            for (Map.Entry<Integer, Integer> entry : generations.entrySet()) {
+                LogSegment segment = LogSegment.open(logsDirectory, entry.getKey(),
+                    entry.getValue());
+                try {
+                    lastLogId = Math.max(lastLogId, segment.maxId());
+                } finally {
+                    segment.close();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Picks the newest complete generation of each user's segment and
+     * deletes everything else: temporary files of interrupted rewrites,
+     * older generations, and segments whose profile was deleted
+     */
+    private void findSegments() throws IOException {
+        Map<Integer, Integer> newest = new HashMap<>();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(logsDirectory)) {
+            for (Path file : entries) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(LogSegment.TEMP_SUFFIX)) {
+                    Files.delete(file);
+                    continue;
+                }
+                files.add(file);
+                String[] parts = name.split("\\.");
+                if (parts.length == 3 && ("." + parts[2]).equals(LogSegment.RECORDS_SUFFIX)) {
+                    newest.merge(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Math::max);
+                }
+            }
+        }
+        newest.keySet().removeIf(userId -> !profiles.containsKey(userId));
+
+        Set<Path> keep = new HashSet<>();
+        for (Map.Entry<Integer, Integer> entry : newest.entrySet()) {
+            keep.add(LogSegment.recordsPath(logsDirectory, entry.getKey(), entry.getValue()));
+            keep.add(LogSegment.notesPath(logsDirectory, entry.getKey(), entry.getValue()));
+        }
+        for (Path file : files) {
+            if (!keep.contains(file)) {
+                Files.delete(file);
+            }
+        }
+        generations.putAll(newest);
+    }
+
+    private static SQLException storageError(IOException e) {
+        return new SQLException("Log store I/O failed: " + e.getMessage(), e);
+    }
+
+    // Profiles
+
+    @Override
+    public void saveUserProfile(UserProfile profile) throws SQLException {
+        writeLock.lock();
+        try {
+            UserProfile stored = UserProfile.copyOf(profile);
+            stored.setId(profileLog.getLastProfileId() + 1);
+            profileLog.writeProfile(stored);
+            profiles.put(stored.getId(), stored);
+            profile.setId(stored.getId());
+        } catch (IOException e) {
+            throw storageError(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void updateUserProfile(UserProfile profile) throws SQLException {
+        writeLock.lock();
+        try {
+            if (profiles.containsKey(profile.getId())) {
+                UserProfile stored = UserProfile.copyOf(profile);
+                profileLog.writeProfile(stored);
+                profiles.put(stored.getId(), stored);
+            }
+        } catch (IOException e) {
+            throw storageError(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public UserProfile getUserProfile(int id) throws SQLException {
+        UserProfile profile = profiles.get(id);
+        return profile == null ? null : UserProfile.copyOf(profile);
+    }
+
+    @Override
+    public int forEachUserProfile(Consumer<UserProfile> consumer) throws SQLException {
+        int count = 0;
+        for (UserProfile profile : profiles.values()) {
+            consumer.accept(UserProfile.copyOf(profile));
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Checks every id before writing any. Each profile is synced as it is
+     * written, so an I/O failure part-way keeps the ones before it.
+     */
+    @Override
+    public int restoreUserProfiles(Iterator<UserProfile> restored) throws SQLException {
+        List<UserProfile> batch = new ArrayList<>();
+        restored.forEachRemaining(profile -> batch.add(UserProfile.copyOf(profile)));
+        writeLock.lock();
+        try {
+            Set<Integer> ids = new HashSet<>();
+            for (UserProfile profile : batch) {
+                if (profiles.containsKey(profile.getId()) || !ids.add(profile.getId())) {
+                    throw new SQLIntegrityConstraintViolationException(
+                        "User profile id " + profile.getId() + " is already taken");
+                }
+            }
+            for (UserProfile profile : batch) {
+                profileLog.writeProfile(profile);
+                profiles.put(profile.getId(), profile);
+            }
+            return batch.size();
+        } catch (IOException e) {
+            throw storageError(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * The deletion record is synced before the segment files are removed;
+     * segments left behind by a crash in between are removed on open
+     */
+    @Override
+    public boolean deleteUserProfile(int id) throws SQLException {
+        writeLock.lock();
+        try {
+            if (!profiles.containsKey(id)) {
+                return false;
+            }
+            Integer generation = generations.get(id);
+            if (generation != null) {
+                // The segment may hold the highest log id
+                profileLog.writeLogIdMark(lastLogId);
+            }
+            profileLog.writeDeleted(id);
+            profiles.remove(id);
+            if (generation != null) {
+                LogSegment segment;
+                synchronized (openSegments) {
+                    generations.remove(id);
+                    segment = openSegments.remove(id);
+                }
+                Files.deleteIfExists(LogSegment.recordsPath(logsDirectory, id, generation));
+                Files.deleteIfExists(LogSegment.notesPath(logsDirectory, id, generation));
+                if (segment != null) {
+                    release(segment);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            throw storageError(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    // Weight logs
+
+    @Override
+    public WeightLog saveWeightLog(WeightLog log) throws SQLException {
+        saveWeightLogs(List.of(log).iterator(), 1, null);
+        return log;
+    }
+
+    /**
+     * Appends a chunk to the users' segments, syncs every touched segment
+     * and only then publishes them, so readers never see part of a chunk;
+     * ids are set once the whole chunk is durable. If anything fails, all
+     * appends of the chunk are discarded. A crash in the middle of the
+     * syncs can still leave the records of some users of a multi-user
+     * chunk on disk; each record is whole either way.
+     */
+    @Override
+    public long saveWeightLogs(Iterator<WeightLog> input, int chunkSize, IntConsumer idSink)
+            throws SQLException {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize must be at least 1");
+        }
+        long count = 0;
+        List<WeightLog> chunk = new ArrayList<>();
+        while (input.hasNext()) {
+            chunk.clear();
+            while (chunk.size() < chunkSize && input.hasNext()) {
+                chunk.add(input.next());
+            }
+            writeLock.lock();
+            try {
+                saveChunk(chunk);
+            } finally {
+                writeLock.unlock();
+            }
+            if (idSink != null) {
+                for (WeightLog log : chunk) {
+                    idSink.accept(log.getId());
+                }
+            }
+            count += chunk.size();
+        }
+        return count;
+    }
+
+    // Called with the write lock held
+    private void saveChunk(List<WeightLog> chunk) throws SQLException {
+        for (WeightLog log : chunk) {
+            if (!profiles.containsKey(log.getUserId())) {
+                throw new SQLIntegrityConstraintViolationException(
+                    "No user profile with id " + log.getUserId());
+            }
+        }
+        Map<Integer, LogSegment> touched = new LinkedHashMap<>();
+        try {
+            saveChunk(chunk, touched);
+        } finally {
+            for (LogSegment segment : touched.values()) {
+                release(segment);
+            }
+        }
+    }
+
+    // Appends through segments pinned into touched, which the caller
+    // releases
+    private void saveChunk(List<WeightLog> chunk, Map<Integer, LogSegment> touched)
+            throws SQLException {
+        int firstId = lastLogId + 1;
+        try {
+            int id = firstId;
+            for (WeightLog log : chunk) {
+                LogSegment segment = segmentFor(log.getUserId(), touched);
+                // Written with its id, but the log object only gets it on success
+                int previous = log.getId();
+                log.setId(id++);
+                try {
+                    segment.append(log);
+                } finally {
+                    log.setId(previous);
+                }
+            }
+            for (LogSegment segment : touched.values()) {
+                segment.sync();
+            }
+        } catch (IOException | RuntimeException e) {
+            // The ids are not handed out again, in case records of the
+            // chunk survive on disk after all
+            lastLogId += chunk.size();
+            for (LogSegment segment : touched.values()) {
+                try {
+                    segment.rollback();
+                } catch (IOException rollbackError) {
+                    e.addSuppressed(rollbackError);
+                }
+            }
+            if (e instanceof IOException io) {
+                throw storageError(io);
+            }
+            throw (RuntimeException) e;
+        }
+        for (LogSegment segment : touched.values()) {
+            segment.publish();
+        }
+        for (WeightLog log : chunk) {
+            log.setId(++lastLogId);
+        }
+        for (LogSegment segment : touched.values()) {
+            if (segment.needsRewrite()) {
+                rewrite(segment);
+            }
+        }
+    }
+
+    // Called with the write lock held; pins the user's segment once per
+    // chunk, creating it for the user's first log
+    private LogSegment segmentFor(int userId, Map<Integer, LogSegment> pinned)
+            throws IOException {
+        LogSegment segment = pinned.get(userId);
+        if (segment == null) {
+            generations.putIfAbsent(userId, 0);
+            segment = retain(userId);
+            pinned.put(userId, segment);
+        }
+        return segment;
+    }
+
+    // Called with the write lock held and the segment pinned by the caller
+    private void rewrite(LogSegment segment) throws SQLException {
+        try {
+            LogSegment replacement = segment.rewrite(logsDirectory);
+            synchronized (openSegments) {
+                generations.put(segment.getUserId(), replacement.getGeneration());
+                openSegments.put(segment.getUserId(), replacement);
+            }
+            release(segment);
+        } catch (IOException e) {
+            throw storageError(e);
+        }
+    }
+
+    // Drops a read's reference, or the repository's once the segment is out
+    // of the map; the last one closes it
+    private static void release(LogSegment segment) {
+        try {
+            segment.release();
+        } catch (IOException e) {
+            System.err.println("Error closing log segment: " + e.getMessage());
+        }
+    }
+
+    /**
+     * The user's current segment, pinned, or null if the user has no logs.
+     * Opens it if needed, closing the least recently used idle segments to
+     * stay within the limit. Must be released with {@link #release}.
+     */
+    private LogSegment retain(int userId) throws IOException {
+        synchronized (openSegments) {
+            LogSegment segment = openSegments.get(userId);
+            if (segment == null) {
+                Integer generation = generations.get(userId);
+                if (generation == null) {
+                    return null;
+                }
+                segment = LogSegment.open(logsDirectory, userId, generation);
+                openSegments.put(userId, segment);
+                evictIdleSegments();
+            }
+            // Segments in the map hold the repository's reference, so they
+            // are still open
+            segment.retain();
+            return segment;
+        }
+    }
+
+    // Called holding the openSegments monitor. References are only taken
+    // under it, so a segment seen idle here cannot be picked up meanwhile;
+    // pinned ones are skipped, which may leave the map over the limit
+    private void evictIdleSegments() {
+        Iterator<LogSegment> eldest = openSegments.values().iterator();
+        int excess = openSegments.size() - maxOpenSegments;
+        while (excess > 0 && eldest.hasNext()) {
+            LogSegment segment = eldest.next();
+            if (segment.isIdle()) {
+                eldest.remove();
+                release(segment);
+                excess--;
+            }
+        }
+    }
+
+    /**
+     * Number of segments currently open
+     */
+    public int getOpenSegmentCount() {
+        synchronized (openSegments) {
+            return openSegments.size();
+        }
+    }
+
+    /**
+     * Sorts every segment, drops unreferenced notes and rewrites the
+     * profile file down to one record per profile
+     */
+    public void compact() throws SQLException {
+        writeLock.lock();
+        try {
+            for (int userId : generations.keySet()) {
+                LogSegment segment = retain(userId);
+                try {
+                    rewrite(segment);
+                } finally {
+                    release(segment);
+                }
+            }
+            profileLog.rewrite(profiles.values(), lastLogId);
+        } catch (IOException e) {
+            throw storageError(e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private interface SegmentRead<T> {
+        T apply(LogSegment segment) throws IOException;
+    }
+
+    private <T> T read(int userId, T empty, SegmentRead<T> read) throws SQLException {
+        LogSegment segment;
+        try {
+            segment = retain(userId);
+        } catch (IOException e) {
+            throw storageError(e);
+        }
+        if (segment == null) {
+            return empty;
+        }
+        try {
+            return read.apply(segment);
+        } catch (IOException e) {
+            throw storageError(e);
+        } finally {
+            release(segment);
+        }
+    }
+
+    @Override
+    public List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        return getWeightLogs(userId, startDate, endDate, 0, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate,
+            int offset, int limit) throws SQLException {
+        List<WeightLog> logs = new ArrayList<>();
+        read(userId, 0, segment -> segment.scan(startDate.toEpochDay(), Long.MIN_VALUE,
+            endDate.toEpochDay(), offset, limit, true, collector(logs)));
+        return logs;
+    }
+
+    @Override
+    public List<WeightLog> getWeightLogsPage(int userId, LocalDate afterDate, int afterId,
+            LocalDate endDate, int skip, int limit) throws SQLException {
+        List<WeightLog> logs = new ArrayList<>();
+        read(userId, 0, segment -> segment.scan(afterDate.toEpochDay(), afterId + 1L,
+            endDate.toEpochDay(), skip, limit, true, collector(logs)));
+        return logs;
+    }
+
+    @Override
+    public int countWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        return read(userId, 0, segment -> segment.count(startDate.toEpochDay(),
+            endDate.toEpochDay()));
+    }
+
+    @Override
+    public int forEachWeightLog(int userId, LocalDate startDate, LocalDate endDate,
+            WeightLogVisitor visitor) throws SQLException {
+        return read(userId, 0, segment -> segment.scan(startDate.toEpochDay(), Long.MIN_VALUE,
+            endDate.toEpochDay(), 0, Integer.MAX_VALUE, true, visitor));
+    }
+
+    @Override
+    public long forEachWeightLog(WeightLogVisitor visitor) throws SQLException {
+        long count = 0;
+        for (int userId : generations.keySet()) {
+            count += read(userId, 0, segment -> segment.scan(Long.MIN_VALUE, Long.MIN_VALUE,
+                Long.MAX_VALUE, 0, Integer.MAX_VALUE, true, visitor));
+        }
+        return count;
+    }
+
+    @Override
+    public WeightLogSeries getWeightLogSeries(int userId, LocalDate startDate,
+            LocalDate endDate) throws SQLException {
+        WeightLogSeries.Builder series = new WeightLogSeries.Builder(userId);
+        read(userId, 0, segment -> segment.scan(startDate.toEpochDay(), Long.MIN_VALUE,
+            endDate.toEpochDay(), 0, Integer.MAX_VALUE, false,
+            (id, user, day, weight, consumed, burned, minutes, notes) ->
+                series.add((int) day, weight, consumed, burned, minutes)));
+        return series.build();
+    }
+
+    /**
+     * Collects the range up front; the stream holds no resources
+     */
+    @Override
+    public Stream<WeightLog> streamWeightLogs(int userId, LocalDate startDate,
+            LocalDate endDate) throws SQLException {
+        return getWeightLogs(userId, startDate, endDate).stream();
+    }
+
+    @Override
+    public WeightLog getLatestWeightLog(int userId) throws SQLException {
+        List<WeightLog> latest = new ArrayList<>(1);
+        read(userId, false, segment -> segment.latest(collector(latest)));
+        return latest.isEmpty() ? null : latest.get(0);
+    }
+
+    private static WeightLogVisitor collector(List<WeightLog> logs) {
+        return (id, userId, epochDay, weight, consumed, burned, minutes, notes) -> {
+            WeightLog log = new WeightLog(userId, LocalDate.ofEpochDay(epochDay), weight,
+                consumed, burned, minutes);
+            log.setId(id);
+            log.setNotes(notes);
+            logs.add(log);
+        };
+    }
+
+    @Override
+    public void close() {
+        writeLock.lock();
+        try {
+            List<LogSegment> open;
+            synchronized (openSegments) {
+                open = new ArrayList<>(openSegments.values());
+                openSegments.clear();
+            }
+            for (LogSegment segment : open) {
+                try {
+                    segment.close();
+                } catch (IOException e) {
+                    System.err.println("Error closing log segment: " + e.getMessage());
+                }
+            }
+            try {
+                profileLog.close();
+            } catch (IOException e) {
+                System.err.println("Error closing profile log: " + e.getMessage());
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package weightcalc.db;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A single, ordered schema change. The checksum is derived from the SQL the
+ * step runs, so editing an already-applied migration is detected at startup.
+ */
+public abstract class Migration {
+    private final int version;
+    private final String description;
+
+    protected Migration(int version, String description) {
+        this.version = version;
+        this.description = description;
+    }
+
+    public int getVersion() { return version; }
+    public String getDescription() { return description; }
+
+    /**
+     * SQL statements making up this step, in execution order
+     */
+    protected abstract List<String> statements();
+
+    /**
+     * Backfills to run in the background once this step has been applied
+     */
+    public List<Backfill> backfills() {
+        return List.of();
+    }
+
+    /**
+     * Applies the step inside the migrator's transaction. Steps that need to
+     * inspect the existing schema override this, but should still only run
+     * the SQL listed in {@link #statements()}.
+     */
+    public void apply(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String sql : statements()) {
+                stmt.execute(sql);
+            }
+        }
+    }
+
+    public long checksum() {
+        CRC32 crc = new CRC32();
+        crc.update(description.getBytes(StandardCharsets.UTF_8));
+        for (String sql : statements()) {
+            crc.update(sql.strip().getBytes(StandardCharsets.UTF_8));
+        }
+        return crc.getValue();
+    }
+}
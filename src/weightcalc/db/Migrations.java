@@ -0,0 +1,305 @@
+package weightcalc.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * The application's schema history. New steps are appended with the next
+ * version number; applied steps must never be edited.
+ */
+final class Migrations {
+
+    static List<Migration> all() {
+        return List.of(
+            new BaseTables(),
+            new EpochDayDates(),
+            new ProfileEnumCodes(),
+            new WeightLogRollups(),
+            new WeightGoals(),
+            new IdSequences()
+        );
+    }
+
+    /**
+     * v1: the original tables. Uses IF NOT EXISTS so databases created
+     * before versioning adopt the schema history without changes.
+     */
+    private static class BaseTables extends Migration {
+        BaseTables() {
+            super(1, "Create user_profiles and weight_logs");
+        }
+
+        @Override
+        protected List<String> statements() {
+            return List.of("""
+                CREATE TABLE IF NOT EXISTS user_profiles (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    height REAL NOT NULL,
+                    current_weight REAL NOT NULL,
+                    target_weight REAL NOT NULL,
+                    age INTEGER NOT NULL,
+                    gender TEXT NOT NULL,
+                    activity_level TEXT NOT NULL
+                )
+            """, """
+                CREATE TABLE IF NOT EXISTS weight_logs (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    user_id INTEGER NOT NULL,
+                    date INTEGER NOT NULL,
+                    weight REAL NOT NULL,
+                    calories_consumed INTEGER,
+                    calories_burned INTEGER,
+                    exercise_minutes INTEGER,
+                    notes TEXT,
+                    FOREIGN KEY (user_id) REFERENCES user_profiles(id)
+                )
+            """);
+        }
+    }
+
+    /**
+     * v2: converts TEXT (yyyy-MM-dd) dates to epoch-day integers and adds the
+     * (user_id, date) index. SQLite cannot change a column type, so the table
+     * is rebuilt in place, keeping every row id.
+     */
+    private static class EpochDayDates extends Migration {
+        private static final String CREATE_INDEX = """
+            CREATE INDEX IF NOT EXISTS idx_weight_logs_user_date
+            ON weight_logs (user_id, date)
+        """;
+
+        EpochDayDates() {
+            super(2, "Store weight_logs.date as epoch day and index (user_id, date)");
+        }
+
+        @Override
+        protected List<String> statements() {
+            return List.of("""
+                CREATE TABLE weight_logs_migrated (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    user_id INTEGER NOT NULL,
+                    date INTEGER NOT NULL,
+                    weight REAL NOT NULL,
+                    calories_consumed INTEGER,
+                    calories_burned INTEGER,
+                    exercise_minutes INTEGER,
+                    notes TEXT,
+                    FOREIGN KEY (user_id) REFERENCES user_profiles(id)
+                )
+            """, """
+                INSERT INTO weight_logs_migrated (id, user_id, date, weight,
+                    calories_consumed, calories_burned, exercise_minutes, notes)
+                SELECT id, user_id, CAST(julianday(date) - 2440587.5 AS INTEGER), weight,
+                    calories_consumed, calories_burned, exercise_minutes, notes
+                FROM weight_logs
+            """,
+                "DROP TABLE weight_logs",
+                "ALTER TABLE weight_logs_migrated RENAME TO weight_logs",
+                CREATE_INDEX);
+        }
+
+        @Override
+        public void apply(Connection connection) throws SQLException {
+            // Fresh databases already get INTEGER dates from v1
+            if ("TEXT".equalsIgnoreCase(columnType(connection, "weight_logs", "date"))) {
+                super.apply(connection);
+            } else {
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute(CREATE_INDEX);
+                }
+            }
+        }
+    }
+
+    /**
+     * v3: stores gender and activity level as the integer codes of their
+     * enums instead of free-form text, rebuilding user_profiles in place.
+     * Unrecognised values are read as FEMALE and SEDENTARY, as the text
+     * columns always were; the affected ids are reported so they can be
+     * corrected with the CLI's profile update.
+     */
+    private static class ProfileEnumCodes extends Migration {
+        ProfileEnumCodes() {
+            super(3, "Store user_profiles.gender and activity_level as enum codes");
+        }
+
+        @Override
+        protected List<String> statements() {
+            return List.of("""
+                CREATE TABLE user_profiles_migrated (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    height REAL NOT NULL,
+                    current_weight REAL NOT NULL,
+                    target_weight REAL NOT NULL,
+                    age INTEGER NOT NULL,
+                    gender INTEGER NOT NULL,
+                    activity_level INTEGER NOT NULL
+                )
+            """, """
+                INSERT INTO user_profiles_migrated (id, height, current_weight,
+                    target_weight, age, gender, activity_level)
+                SELECT id, height, current_weight, target_weight, age,
+                    CASE lower(gender) WHEN 'male' THEN 0 ELSE 1 END,
+                    CASE lower(activity_level)
+                        WHEN 'light activity' THEN 1
+                        WHEN 'moderate activity' THEN 2
+                        WHEN 'very active' THEN 3
+                        ELSE 0
+                    END
+                FROM user_profiles
+            """,
+                "DROP TABLE user_profiles",
+                "ALTER TABLE user_profiles_migrated RENAME TO user_profiles");
+        }
+
+        @Override
+        public void apply(Connection connection) throws SQLException {
+            String sql = """
+                SELECT id, gender, activity_level FROM user_profiles
+                WHERE gender IS NULL OR lower(gender) NOT IN ('male', 'female')
+                    OR activity_level IS NULL OR lower(activity_level) NOT IN
+                        ('sedentary', 'light activity', 'moderate activity', 'very active')
+                ORDER BY id
+            """;
+            StringBuilder unknown = new StringBuilder();
+            int count = 0;
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                while (rs.next()) {
+                    if (++count > 10) {
+                        continue;
+                    }
+                    if (unknown.length() > 0) {
+                        unknown.append(", ");
+                    }
+                    unknown.append("id ").append(rs.getInt(1)).append(" (gender '")
+                        .append(rs.getString(2)).append("', activity level '")
+                        .append(rs.getString(3)).append("')");
+                }
+            }
+            if (count > 0) {
+                System.err.println("Migration v3: " + count + " profile(s) with unrecognised "
+                    + "values stored as female/sedentary; check them with 'profile update': "
+                    + unknown + (count > 10 ? ", ..." : ""));
+            }
+            super.apply(connection);
+        }
+    }
+
+    /**
+     * v4: per-user weekly and monthly aggregates of weight_logs, so trend
+     * views read one row per period instead of one per day. Existing logs
+     * are rolled up by a backfill.
+     */
+    private static class WeightLogRollups extends Migration {
+        WeightLogRollups() {
+            super(4, "Create weight_log_rollups");
+        }
+
+        @Override
+        protected List<String> statements() {
+            return List.of("""
+                CREATE TABLE weight_log_rollups (
+                    user_id INTEGER NOT NULL,
+                    period INTEGER NOT NULL,
+                    period_start INTEGER NOT NULL,
+                    log_count INTEGER NOT NULL,
+                    min_weight REAL NOT NULL,
+                    max_weight REAL NOT NULL,
+                    weight_sum REAL NOT NULL,
+                    calories_consumed INTEGER NOT NULL,
+                    calories_burned INTEGER NOT NULL,
+                    exercise_minutes INTEGER NOT NULL,
+                    PRIMARY KEY (user_id, period, period_start)
+                ) WITHOUT ROWID
+            """);
+        }
+
+        @Override
+        public List<Backfill> backfills() {
+            return List.of(new Rollups.InitialBackfill());
+        }
+    }
+
+    /**
+     * v5: weight goals and their milestones. Only active goals are looked
+     * up on the ingest path, so the user index is partial and stays small
+     * however many goals have been finished.
+     */
+    private static class WeightGoals extends Migration {
+        WeightGoals() {
+            super(5, "Create weight_goals and goal_milestones");
+        }
+
+        @Override
+        protected List<String> statements() {
+            return List.of("""
+                CREATE TABLE weight_goals (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    user_id INTEGER NOT NULL,
+                    start_weight REAL NOT NULL,
+                    target_weight REAL NOT NULL,
+                    start_date INTEGER NOT NULL,
+                    deadline INTEGER,
+                    weekly_rate REAL NOT NULL,
+                    active INTEGER NOT NULL DEFAULT 1,
+                    achieved_date INTEGER,
+                    FOREIGN KEY (user_id) REFERENCES user_profiles(id)
+                )
+            """, """
+                CREATE INDEX idx_weight_goals_active
+                ON weight_goals (user_id) WHERE active = 1
+            """, """
+                CREATE TABLE goal_milestones (
+                    goal_id INTEGER NOT NULL,
+                    seq INTEGER NOT NULL,
+                    weight REAL NOT NULL,
+                    reached_date INTEGER,
+                    PRIMARY KEY (goal_id, seq),
+                    FOREIGN KEY (goal_id) REFERENCES weight_goals(id)
+                ) WITHOUT ROWID
+            """);
+        }
+    }
+
+    /**
+     * v6: named id sequences handed out in blocks, so profiles created
+     * through a {@link ShardRouter} get ids that are unique across shards
+     * before it is known which shard will store them.
+     */
+    private static class IdSequences extends Migration {
+        IdSequences() {
+            super(6, "Create id_sequences");
+        }
+
+        @Override
+        protected List<String> statements() {
+            return List.of("""
+                CREATE TABLE id_sequences (
+                    name TEXT PRIMARY KEY,
+                    next_value INTEGER NOT NULL
+                ) WITHOUT ROWID
+            """);
+        }
+    }
+
+    static String columnType(Connection connection, String table, String column)
+            throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(" + table + ")")) {
+            while (rs.next()) {
+                if (column.equalsIgnoreCase(rs.getString("name"))) {
+                    return rs.getString("type");
+                }
+            }
+        }
+        return null;
+    }
+
+    private Migrations() {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -0,0 +1,189 @@
+package weightcalc.db;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import weightcalc.model.ActivityLevel;
+import weightcalc.model.Gender;
+import weightcalc.model.UserProfile;
+
+/**
+ * Profiles for {@link MappedWeightRepository}: an append-only file of
+ * checksummed fixed-width records, each the latest state of a profile, a
+ * deletion, or the log id high-water mark. Replaying the file rebuilds the
+ * profile map; a torn record at the end is cut off. {@link #rewrite}
+ * replaces the file with one record per live profile.
+ *
+ * Not thread-safe; used under the repository's write lock.
+ */
+final class ProfileLog implements AutoCloseable {
+    private static final int RECORD_SIZE = 48;
+    // Layout: id, kind, height, current weight, target weight, age, gender,
+    // activity level, then a CRC of the preceding 44 bytes
+    private static final int CRC = 44;
+
+    private static final int PROFILE = 0;
+    private static final int DELETED = 1;
+    // The id field holds the highest log id ever handed out
+    private static final int LOG_ID_MARK = 2;
+
+    private final Path path;
+    private FileChannel channel;
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+
+    private int lastProfileId;
+    private int lastLogId;
+
+    private ProfileLog(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Opens the file and replays it into profiles, truncating a torn tail
+     */
+    static ProfileLog open(Path path, Map<Integer, UserProfile> profiles) throws IOException {
+        ProfileLog log = new ProfileLog(path);
+        try {
+            log.replay(profiles);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+        return log;
+    }
+
+    private void replay(Map<Integer, UserProfile> profiles) throws IOException {
+        long valid = 0;
+        long size = channel.size();
+        while (valid + RECORD_SIZE <= size) {
+            record.clear();
+            while (record.hasRemaining()) {
+                channel.read(record, valid + record.position());
+            }
+            if (record.getInt(CRC) != checksum()) {
+                break;
+            }
+            int id = record.getInt(0);
+            switch (record.getInt(4)) {
+                case PROFILE -> {
+                    UserProfile profile = new UserProfile(record.getDouble(8),
+                        record.getDouble(16), record.getDouble(24), record.getInt(32),
+                        Gender.fromCode(record.getInt(36)),
+                        ActivityLevel.fromCode(record.getInt(40)));
+                    profile.setId(id);
+                    profiles.put(id, profile);
+                    lastProfileId = Math.max(lastProfileId, id);
+                }
+                case DELETED -> {
+                    profiles.remove(id);
+                    lastProfileId = Math.max(lastProfileId, id);
+                }
+                case LOG_ID_MARK -> lastLogId = Math.max(lastLogId, id);
+                default -> throw new IOException("Unknown record kind in " + path);
+            }
+            valid += RECORD_SIZE;
+        }
+        if (valid < size) {
+            channel.truncate(valid);
+            channel.force(false);
+        }
+    }
+
+    private int checksum() {
+        crc.reset();
+        crc.update(record.array(), 0, CRC);
+        return (int) crc.getValue();
+    }
+
+    int getLastProfileId() {
+        return lastProfileId;
+    }
+
+    int getLastLogId() {
+        return lastLogId;
+    }
+
+    void writeProfile(UserProfile profile) throws IOException {
+        lastProfileId = Math.max(lastProfileId, profile.getId());
+        append(fill(PROFILE, profile.getId(), profile));
+    }
+
+    void writeDeleted(int id) throws IOException {
+        append(fill(DELETED, id, null));
+    }
+
+    void writeLogIdMark(int lastLogId) throws IOException {
+        this.lastLogId = Math.max(this.lastLogId, lastLogId);
+        append(fill(LOG_ID_MARK, lastLogId, null));
+    }
+
+    private ByteBuffer fill(int kind, int id, UserProfile profile) {
+        record.clear();
+        record.putInt(0, id);
+        record.putInt(4, kind);
+        record.putDouble(8, profile == null ? 0 : profile.getHeight());
+        record.putDouble(16, profile == null ? 0 : profile.getCurrentWeight());
+        record.putDouble(24, profile == null ? 0 : profile.getTargetWeight());
+        record.putInt(32, profile == null ? 0 : profile.getAge());
+        record.putInt(36, profile == null ? 0 : profile.getGender().getCode());
+        record.putInt(40, profile == null ? 0 : profile.getActivityLevel().getCode());
+        record.putInt(CRC, checksum());
+        return record;
+    }
+
+    private void append(ByteBuffer bytes) throws IOException {
+        long position = channel.size();
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * Replaces the file with the live profiles plus the id high-water
+     * marks, via a synced temporary file moved into place
+     */
+    void rewrite(Collection<UserProfile> live, int lastLogId) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + LogSegment.TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            boolean lastIdLive = false;
+            for (UserProfile profile : live) {
+                writeTo(out, fill(PROFILE, profile.getId(), profile));
+                lastIdLive |= profile.getId() == lastProfileId;
+            }
+            // Keeps deleted ids from being handed out again
+            if (!lastIdLive && lastProfileId > 0) {
+                writeTo(out, fill(DELETED, lastProfileId, null));
+            }
+            writeTo(out, fill(LOG_ID_MARK, Math.max(this.lastLogId, lastLogId), null));
+            out.force(false);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        FileChannel old = channel;
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        old.close();
+        this.lastLogId = Math.max(this.lastLogId, lastLogId);
+    }
+
+    private static void writeTo(FileChannel out, ByteBuffer bytes) throws IOException {
+        while (bytes.hasRemaining()) {
+            out.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,254 @@
+package weightcalc.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import weightcalc.model.RollupPeriod;
+import weightcalc.model.WeightLog;
+
+/**
+ * Maintenance of the weight_log_rollups table, which keeps per-user weekly
+ * and monthly aggregates of weight_logs. Single saves upsert their row into
+ * both periods; batches are folded in memory first, so each chunk touches
+ * one rollup row per (user, period) instead of two per log. The rebuild
+ * statements recompute rollups from the raw logs.
+ */
+final class Rollups {
+    static final String UPSERT_SQL = """
+        INSERT INTO weight_log_rollups (user_id, period, period_start, log_count,
+            min_weight, max_weight, weight_sum, calories_consumed, calories_burned,
+            exercise_minutes)
+        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+        ON CONFLICT (user_id, period, period_start) DO UPDATE SET
+            log_count = log_count + excluded.log_count,
+            min_weight = min(min_weight, excluded.min_weight),
+            max_weight = max(max_weight, excluded.max_weight),
+            weight_sum = weight_sum + excluded.weight_sum,
+            calories_consumed = calories_consumed + excluded.calories_consumed,
+            calories_burned = calories_burned + excluded.calories_burned,
+            exercise_minutes = exercise_minutes + excluded.exercise_minutes
+    """;
+
+    // Monday of the week: epoch day 0 was a Thursday. SQLite's % keeps the
+    // sign of the dividend, hence the extra + 7.
+    private static final String WEEK_START = "date - ((date + 3) % 7 + 7) % 7";
+    private static final String MONTH_START = 
+        "CAST(julianday(date(date * 86400, 'unixepoch', 'start of month')) - 2440587.5 AS INTEGER)";
+
+    private static String rebuildSql(RollupPeriod period, String periodStart) {
+        return """
+            INSERT INTO weight_log_rollups (user_id, period, period_start, log_count,
+                min_weight, max_weight, weight_sum, calories_consumed, calories_burned,
+                exercise_minutes)
+            SELECT user_id, %d, %s, COUNT(*), MIN(weight), MAX(weight), SUM(weight),
+                TOTAL(calories_consumed), TOTAL(calories_burned), TOTAL(exercise_minutes)
+            FROM weight_logs
+            WHERE user_id BETWEEN ? AND ?
+            GROUP BY 1, 2, 3
+        """.formatted(period.getCode(), periodStart);
+    }
+
+    private static final String REBUILD_WEEKS_SQL = rebuildSql(RollupPeriod.WEEK, WEEK_START);
+    private static final String REBUILD_MONTHS_SQL = rebuildSql(RollupPeriod.MONTH, MONTH_START);
+
+    /**
+     * Recomputes the rollups of all users with ids in [fromUserId, toUserId]
+     * from their logs. Run inside a transaction.
+     * @return number of rollup rows written
+     */
+    static int rebuild(Connection connection, int fromUserId, int toUserId) throws SQLException {
+        String delete = "DELETE FROM weight_log_rollups WHERE user_id BETWEEN ? AND ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(delete)) {
+            pstmt.setInt(1, fromUserId);
+            pstmt.setInt(2, toUserId);
+            pstmt.executeUpdate();
+        }
+        int rows = 0;
+        for (String sql : new String[] {REBUILD_WEEKS_SQL, REBUILD_MONTHS_SQL}) {
+            try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+                pstmt.setInt(1, fromUserId);
+                pstmt.setInt(2, toUserId);
+                rows += pstmt.executeUpdate();
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Adds one log to its week and month through a prepared {@link #UPSERT_SQL}
+     */
+    static void upsert(PreparedStatement upsert, WeightLog log) throws SQLException {
+        long epochDay = log.getDate().toEpochDay();
+        for (RollupPeriod period : PERIODS) {
+            bind(upsert, log.getUserId(), period, period.startOf(epochDay), 1,
+                log.getWeight(), log.getWeight(), log.getWeight(), log.getCaloriesConsumed(),
+                log.getCaloriesBurned(), log.getExerciseMinutes());
+            upsert.executeUpdate();
+        }
+    }
+
+    private static final RollupPeriod[] PERIODS = RollupPeriod.values();
+
+    private static void bind(PreparedStatement pstmt, int userId, RollupPeriod period,
+            long periodStart, int count, double min, double max, double sum,
+            long caloriesConsumed, long caloriesBurned, long exerciseMinutes) throws SQLException {
+        pstmt.setInt(1, userId);
+        pstmt.setInt(2, period.getCode());
+        pstmt.setLong(3, periodStart);
+        pstmt.setInt(4, count);
+        pstmt.setDouble(5, min);
+        pstmt.setDouble(6, max);
+        pstmt.setDouble(7, sum);
+        pstmt.setLong(8, caloriesConsumed);
+        pstmt.setLong(9, caloriesBurned);
+        pstmt.setLong(10, exerciseMinutes);
+    }
+
+    /**
+     * Folds a chunk of logs into per-(user, period) deltas before they are
+     * upserted. Reused across chunks.
+     */
+    static final class Batch {
+        private final Map<Key, Delta> deltas = new HashMap<>();
+
+        void add(WeightLog log) {
+            long epochDay = log.getDate().toEpochDay();
+            for (RollupPeriod period : PERIODS) {
+                Key key = new Key(log.getUserId(), period, period.startOf(epochDay));
+                Delta delta = deltas.get(key);
+                if (delta == null) {
+                    delta = new Delta(log.getWeight());
+                    deltas.put(key, delta);
+                }
+                delta.add(log);
+            }
+        }
+
+        /**
+         * Upserts and clears the accumulated deltas, in the caller's transaction
+         */
+        void flush(PreparedStatement upsert) throws SQLException {
+            if (deltas.isEmpty()) {
+                return;
+            }
+            for (Map.Entry<Key, Delta> entry : deltas.entrySet()) {
+                Key key = entry.getKey();
+                Delta d = entry.getValue();
+                bind(upsert, key.userId, key.period, key.periodStart, d.count, d.min, d.max,
+                    d.sum, d.caloriesConsumed, d.caloriesBurned, d.exerciseMinutes);
+                upsert.addBatch();
+            }
+            upsert.executeBatch();
+            deltas.clear();
+        }
+    }
+
+    private static final class Key {
+        final int userId;
+        final RollupPeriod period;
+        final long periodStart;
+
+        Key(int userId, RollupPeriod period, long periodStart) {
+            this.userId = userId;
+            this.period = period;
+            this.periodStart = periodStart;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return userId == other.userId && period == other.period 
+                && periodStart == other.periodStart;
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * userId + period.getCode()) * 31 + Long.hashCode(periodStart);
+        }
+    }
+
+    private static final class Delta {
+        int count;
+        double min;
+        double max;
+        double sum;
+        long caloriesConsumed;
+        long caloriesBurned;
+        long exerciseMinutes;
+
+        Delta(double weight) {
+            min = weight;
+            max = weight;
+        }
+
+        void add(WeightLog log) {
+            count++;
+            min = Math.min(min, log.getWeight());
+            max = Math.max(max, log.getWeight());
+            sum += log.getWeight();
+            caloriesConsumed += log.getCaloriesConsumed();
+            caloriesBurned += log.getCaloriesBurned();
+            exerciseMinutes += log.getExerciseMinutes();
+        }
+    }
+
+    /**
+     * Builds rollups for logs written before the table existed, a range of
+     * users per chunk. Each chunk recomputes its users from scratch, so it is
+     * idempotent and unaffected by rollups upserted concurrently by new
+     * saves. Progress lives in memory only; after a restart the backfill
+     * starts over, which is safe for the same reason.
+     */
+    static final class InitialBackfill implements Backfill {
+        private int lastUserId = Integer.MIN_VALUE;
+
+        @Override
+        public String name() {
+            return "weight_log_rollups.initial";
+        }
+
+        @Override
+        public int runChunk(Connection connection, int chunkSize) throws SQLException {
+            // Take users until about chunkSize logs are covered, always
+            // finishing the user at the boundary
+            String bound = """
+                SELECT user_id FROM weight_logs WHERE user_id > ?
+                ORDER BY user_id LIMIT 1 OFFSET ?
+            """;
+            String last = "SELECT MAX(user_id) FROM weight_logs WHERE user_id > ?";
+            int toUserId;
+            try (PreparedStatement pstmt = connection.prepareStatement(bound)) {
+                pstmt.setInt(1, lastUserId);
+                pstmt.setInt(2, chunkSize - 1);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    toUserId = rs.next() ? rs.getInt(1) : Integer.MIN_VALUE;
+                }
+            }
+            if (toUserId == Integer.MIN_VALUE) {
+                try (PreparedStatement pstmt = connection.prepareStatement(last)) {
+                    pstmt.setInt(1, lastUserId);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        rs.next();
+                        toUserId = rs.getInt(1);
+                        if (rs.wasNull()) {
+                            return 0;
+                        }
+                    }
+                }
+            }
+            int rows = rebuild(connection, lastUserId + 1, toUserId);
+            lastUserId = toUserId;
+            return Math.max(rows, 1);
+        }
+    }
+
+    private Rollups() {
+        // Private constructor to prevent instantiation
+    }
+}
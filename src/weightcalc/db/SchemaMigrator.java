@@ -0,0 +1,199 @@
+package weightcalc.db;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies ordered, checksummed {@link Migration}s and tracks them in the
+ * schema_version table. The applied version is mirrored in SQLite's
+ * user_version header field, so an up-to-date database is recognised with a
+ * single pragma read and no DDL at all.
+ */
+public class SchemaMigrator {
+    private final List<Migration> migrations;
+    private final Map<String, Backfill> backfills = new HashMap<>();
+    private final int latestVersion;
+
+    public SchemaMigrator(List<Migration> migrations) {
+        this.migrations = List.copyOf(migrations);
+        for (int i = 0; i < this.migrations.size(); i++) {
+            Migration migration = this.migrations.get(i);
+            if (migration.getVersion() != i + 1) {
+                throw new IllegalArgumentException("Migrations must be numbered 1.." 
+                    + this.migrations.size() + " in order, found v" + migration.getVersion());
+            }
+            for (Backfill backfill : migration.backfills()) {
+                if (backfills.put(backfill.name(), backfill) != null) {
+                    throw new IllegalArgumentException("Duplicate backfill " + backfill.name());
+                }
+            }
+        }
+        this.latestVersion = this.migrations.size();
+    }
+
+    public int getLatestVersion() {
+        return latestVersion;
+    }
+
+    /**
+     * Brings the schema up to date, applying all pending steps in one
+     * transaction. Checksums of previously applied steps are verified first.
+     * @return true if any step was applied
+     */
+    public boolean migrate(Connection connection) throws SQLException {
+        int current = readUserVersion(connection);
+        if (current == latestVersion) {
+            return false;
+        }
+        if (current > latestVersion) {
+            throw new SQLException("Database schema v" + current 
+                + " is newer than this application (v" + latestVersion + ")");
+        }
+
+        // Rebuilding a parent table means dropping it, which SQLite refuses
+        // while foreign keys are enforced. The pragma is a no-op inside a
+        // transaction, so it is switched off first and integrity is checked
+        // with foreign_key_check before committing. Rows orphaned before
+        // enforcement was enabled are tolerated, new ones are not.
+        boolean foreignKeys = queryInt(connection, "PRAGMA foreign_keys") == 1;
+        setForeignKeys(connection, false);
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            int danglingBefore = countForeignKeyViolations(connection);
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS schema_version (
+                        version INTEGER PRIMARY KEY,
+                        description TEXT NOT NULL,
+                        checksum INTEGER NOT NULL,
+                        applied_at INTEGER NOT NULL
+                    )
+                """);
+                stmt.execute("""
+                    CREATE TABLE IF NOT EXISTS schema_backfills (
+                        name TEXT PRIMARY KEY,
+                        completed_at INTEGER
+                    )
+                """);
+            }
+
+            Map<Integer, Long> applied = new HashMap<>();
+            try (Statement stmt = connection.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+                while (rs.next()) {
+                    applied.put(rs.getInt("version"), rs.getLong("checksum"));
+                }
+            }
+
+            String recordVersion = """
+                INSERT INTO schema_version (version, description, checksum, applied_at)
+                VALUES (?, ?, ?, ?)
+            """;
+            String recordBackfill = "INSERT OR IGNORE INTO schema_backfills (name) VALUES (?)";
+            try (PreparedStatement versionStmt = connection.prepareStatement(recordVersion);
+                 PreparedStatement backfillStmt = connection.prepareStatement(recordBackfill)) {
+                for (Migration migration : migrations) {
+                    Long checksum = applied.get(migration.getVersion());
+                    if (checksum != null) {
+                        if (checksum != migration.checksum()) {
+                            throw new SQLException("Checksum mismatch for applied migration v"
+                                + migration.getVersion() + " (" + migration.getDescription() + ")");
+                        }
+                        continue;
+                    }
+
+                    migration.apply(connection);
+
+                    versionStmt.setInt(1, migration.getVersion());
+                    versionStmt.setString(2, migration.getDescription());
+                    versionStmt.setLong(3, migration.checksum());
+                    versionStmt.setLong(4, System.currentTimeMillis());
+                    versionStmt.executeUpdate();
+
+                    for (Backfill backfill : migration.backfills()) {
+                        backfillStmt.setString(1, backfill.name());
+                        backfillStmt.executeUpdate();
+                    }
+                }
+            }
+
+            if (countForeignKeyViolations(connection) > danglingBefore) {
+                throw new SQLException("Migration left dangling foreign keys behind");
+            }
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("PRAGMA user_version = " + latestVersion);
+            }
+            connection.commit();
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+            setForeignKeys(connection, foreignKeys);
+        }
+    }
+
+    private static int countForeignKeyViolations(Connection connection) throws SQLException {
+        int count = 0;
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA foreign_key_check")) {
+            while (rs.next()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void setForeignKeys(Connection connection, boolean enabled) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("PRAGMA foreign_keys = " + (enabled ? "ON" : "OFF"));
+        }
+    }
+
+    /**
+     * Returns backfills registered by applied migrations that have not yet
+     * finished. Must be called after {@link #migrate}.
+     */
+    public List<Backfill> pendingBackfills(Connection connection) throws SQLException {
+        List<Backfill> pending = new ArrayList<>();
+        if (backfills.isEmpty()) {
+            return pending;
+        }
+        String sql = "SELECT name FROM schema_backfills WHERE completed_at IS NULL ORDER BY rowid";
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                Backfill backfill = backfills.get(rs.getString("name"));
+                if (backfill != null) {
+                    pending.add(backfill);
+                }
+            }
+        }
+        return pending;
+    }
+
+    public void markBackfillComplete(Connection connection, Backfill backfill) throws SQLException {
+        String sql = "UPDATE schema_backfills SET completed_at = ? WHERE name = ?";
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setLong(1, System.currentTimeMillis());
+            pstmt.setString(2, backfill.name());
+            pstmt.executeUpdate();
+        }
+    }
+
+    private static int readUserVersion(Connection connection) throws SQLException {
+        return queryInt(connection, "PRAGMA user_version");
+    }
+
+    private static int queryInt(Connection connection, String sql) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+}
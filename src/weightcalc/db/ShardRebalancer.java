@@ -0,0 +1,165 @@
+package weightcalc.db;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import weightcalc.model.UserProfile;
+import weightcalc.model.WeightGoal;
+import weightcalc.model.WeightLog;
+import weightcalc.util.Constants;
+
+/**
+ * Offline tool that moves users to the shard the ring assigns them after
+ * the shard list has changed:
+ *
+ * <pre>
+ * java -cp ... weightcalc.db.ShardRebalancer [--dry-run]
+ *     --from a.db,b.db --to a.db,b.db,c.db
+ * </pre>
+ *
+ * Nothing else may have the shards open while it runs. Each user is copied
+ * (profile, logs, then goals, so old logs do not re-trigger milestones) and
+ * only deleted from its old shard once the copy is complete. A run that is
+ * interrupted can simply be repeated: a partial copy found on the target is
+ * discarded and made again.
+ */
+public final class ShardRebalancer {
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs one rebalance and returns the process exit code
+     */
+    public static int run(String[] args) {
+        List<String> from = null;
+        List<String> to = null;
+        boolean dryRun = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--from") && i + 1 < args.length) {
+                from = parseShards(args[++i]);
+            } else if (arg.equals("--to") && i + 1 < args.length) {
+                to = parseShards(args[++i]);
+            } else if (arg.equals("--dry-run")) {
+                dryRun = true;
+            } else {
+                return usage("Unexpected argument: " + arg);
+            }
+        }
+        if (from == null || to == null) {
+            return usage(null);
+        }
+
+        try {
+            long start = System.nanoTime();
+            int moved = rebalance(from, to, dryRun);
+            System.out.printf("%s %d users in %d ms%n", dryRun ? "Would move" : "Moved", moved,
+                (System.nanoTime() - start) / 1_000_000);
+            return 0;
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Rebalance failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * Moves every user found on any of the old or new shards to its owner on
+     * the ring over the new shard list
+     * @return number of users moved, or that would be moved on a dry run
+     */
+    public static int rebalance(List<String> fromUrls, List<String> toUrls, boolean dryRun)
+            throws SQLException {
+        HashRing ring = new HashRing(toUrls, Constants.DB_SHARD_VIRTUAL_NODES);
+        List<String> allUrls = new ArrayList<>(toUrls);
+        for (String url : fromUrls) {
+            if (!allUrls.contains(url)) {
+                allUrls.add(url);
+            }
+        }
+
+        Map<String, DatabaseHandler> handlers = new LinkedHashMap<>();
+        try {
+            for (String url : allUrls) {
+                handlers.put(url, DatabaseHandler.open(url));
+            }
+            int moved = 0;
+            for (String url : allUrls) {
+                DatabaseHandler source = handlers.get(url);
+                List<UserProfile> misplaced = new ArrayList<>();
+                source.forEachUserProfile(profile -> {
+                    if (!toUrls.get(ring.nodeFor(profile.getId())).equals(url)) {
+                        misplaced.add(profile);
+                    }
+                });
+                for (UserProfile profile : misplaced) {
+                    String targetUrl = toUrls.get(ring.nodeFor(profile.getId()));
+                    if (!dryRun) {
+                        moveUser(profile, source, handlers.get(targetUrl));
+                    }
+                    moved++;
+                }
+                if (!misplaced.isEmpty()) {
+                    System.out.printf("%s: %d users %s%n", url, misplaced.size(),
+                        dryRun ? "misplaced" : "moved out");
+                }
+            }
+            return moved;
+        } finally {
+            handlers.values().forEach(DatabaseHandler::close);
+        }
+    }
+
+    private static void moveUser(UserProfile profile, DatabaseHandler source,
+            DatabaseHandler target) throws SQLException {
+        int userId = profile.getId();
+        // Left behind by an interrupted run; the source copy is still whole
+        if (target.getUserProfile(userId) != null) {
+            target.deleteUserProfile(userId);
+        }
+
+        target.restoreUserProfiles(List.of(profile).iterator());
+        long copied;
+        try (Stream<WeightLog> logs = source.streamWeightLogs(userId, LocalDate.MIN,
+                LocalDate.MAX)) {
+            copied = target.saveWeightLogs(logs.iterator(), Constants.DB_BATCH_CHUNK_SIZE,
+                id -> { });
+        }
+        for (WeightGoal goal : source.getWeightGoals(userId)) {
+            target.saveWeightGoal(goal);
+        }
+
+        int expected = source.countWeightLogs(userId, LocalDate.MIN, LocalDate.MAX);
+        if (copied != expected) {
+            throw new SQLException("Copied " + copied + " of " + expected
+                + " logs for user " + userId + "; source left untouched");
+        }
+        source.deleteUserProfile(userId);
+    }
+
+    private static List<String> parseShards(String list) {
+        return Arrays.stream(list.split(","))
+            .map(String::trim)
+            .filter(shard -> !shard.isEmpty())
+            .map(shard -> shard.startsWith("jdbc:") ? shard : "jdbc:sqlite:" + shard)
+            .toList();
+    }
+
+    private static int usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: ShardRebalancer [--dry-run] --from a.db,b.db --to a.db,b.db,c.db");
+        return 2;
+    }
+
+    private ShardRebalancer() {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -0,0 +1,338 @@
+package weightcalc.db;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import weightcalc.model.*;
+import weightcalc.util.Constants;
+
+/**
+ * Spreads users over several database files. Each user id is placed on a
+ * consistent-hash ring over the shard URLs, and everything belonging to the
+ * user (profile, logs, rollups, goals) lives on that one shard. Every shard
+ * is a full {@link DatabaseHandler} with its own connection pool, so writes
+ * to different shards never wait on each other's writer.
+ *
+ * Profile ids must be known before the owning shard is, so they come from a
+ * sequence kept in the first shard and handed out in blocks. Log and goal
+ * ids are only unique within their shard.
+ *
+ * Shards are identified by URL; keep URLs stable (e.g. relative file names)
+ * and run {@link ShardRebalancer} offline whenever the list changes.
+ */
+public class ShardRouter implements AutoCloseable {
+    static final String PROFILE_SEQUENCE = "user_profiles.id";
+
+    private final List<String> urls;
+    private final List<DatabaseHandler> shards;
+    private final HashRing ring;
+    private final ExecutorService fanOutExecutor;
+
+    private final Object idLock = new Object();
+    // Guarded by idLock: the unused rest of the reserved id block
+    private long nextId;
+    private long idLimit;
+
+    private ShardRouter(List<String> urls, List<DatabaseHandler> shards, int virtualNodes) {
+        this.urls = List.copyOf(urls);
+        this.shards = List.copyOf(shards);
+        this.ring = new HashRing(this.urls, virtualNodes);
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threads = runnable -> {
+            Thread thread = new Thread(runnable, "db-shard-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        this.fanOutExecutor = Executors.newFixedThreadPool(shards.size(), threads);
+    }
+
+    public static ShardRouter open(List<String> urls) throws SQLException {
+        return open(urls, Constants.DB_SHARD_VIRTUAL_NODES);
+    }
+
+    /**
+     * Opens (and migrates) every shard. If any shard fails to open, those
+     * already opened are closed again.
+     */
+    public static ShardRouter open(List<String> urls, int virtualNodes) throws SQLException {
+        if (urls.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (urls.stream().distinct().count() != urls.size()) {
+            throw new IllegalArgumentException("Shard URLs must be distinct");
+        }
+        List<DatabaseHandler> shards = new ArrayList<>(urls.size());
+        try {
+            for (String url : urls) {
+                shards.add(DatabaseHandler.open(url));
+            }
+        } catch (SQLException | RuntimeException e) {
+            shards.forEach(DatabaseHandler::close);
+            throw e;
+        }
+        return new ShardRouter(urls, shards, virtualNodes);
+    }
+
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    public List<String> getShardUrls() {
+        return urls;
+    }
+
+    public DatabaseHandler getShard(int index) {
+        return shards.get(index);
+    }
+
+    public int shardIndexFor(int userId) {
+        return ring.nodeFor(userId);
+    }
+
+    /**
+     * The handler holding everything that belongs to the user
+     */
+    public DatabaseHandler shardFor(int userId) {
+        return shards.get(ring.nodeFor(userId));
+    }
+
+    // Per-user operations, each served by exactly one shard
+
+    /**
+     * Inserts a profile under a new cluster-wide id and sets that id
+     */
+    public void saveUserProfile(UserProfile profile) throws SQLException {
+        int id = allocateUserId();
+        profile.setId(id);
+        DatabaseHandler shard = shardFor(id);
+        shard.restoreUserProfiles(List.of(profile).iterator());
+        shard.getProfileCache().put(id, profile);
+    }
+
+    public void updateUserProfile(UserProfile profile) throws SQLException {
+        shardFor(profile.getId()).updateUserProfile(profile);
+    }
+
+    public UserProfile getUserProfile(int id) throws SQLException {
+        return shardFor(id).getUserProfile(id);
+    }
+
+    public boolean deleteUserProfile(int id) throws SQLException {
+        return shardFor(id).deleteUserProfile(id);
+    }
+
+    public WeightLog saveWeightLog(WeightLog log) throws SQLException {
+        return shardFor(log.getUserId()).saveWeightLog(log);
+    }
+
+    /**
+     * Bulk-inserts logs, splitting them by shard and writing all shards in
+     * parallel. Each shard commits independently, so after a failure some
+     * shards may hold their part of the batch and others not.
+     * @return generated ids, in list order
+     */
+    public int[] saveWeightLogs(List<WeightLog> logs) throws SQLException {
+        int shardCount = shards.size();
+        int[] shardOf = new int[logs.size()];
+        List<List<WeightLog>> groups = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < logs.size(); i++) {
+            WeightLog log = logs.get(i);
+            shardOf[i] = ring.nodeFor(log.getUserId());
+            groups.get(shardOf[i]).add(log);
+        }
+
+        List<int[]> shardIds = fanOutIndexed((index, shard) -> {
+            List<WeightLog> group = groups.get(index);
+            return group.isEmpty() ? new int[0] : shard.saveWeightLogs(group);
+        });
+
+        int[] ids = new int[logs.size()];
+        int[] next = new int[shardCount];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = shardIds.get(shardOf[i])[next[shardOf[i]]++];
+        }
+        return ids;
+    }
+
+    public List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        return shardFor(userId).getWeightLogs(userId, startDate, endDate);
+    }
+
+    public int countWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException {
+        return shardFor(userId).countWeightLogs(userId, startDate, endDate);
+    }
+
+    public WeightLog getLatestWeightLog(int userId) throws SQLException {
+        return shardFor(userId).getLatestWeightLog(userId);
+    }
+
+    public List<WeightLogRollup> getWeightLogRollups(int userId, RollupPeriod period,
+            LocalDate startDate, LocalDate endDate) throws SQLException {
+        return shardFor(userId).getWeightLogRollups(userId, period, startDate, endDate);
+    }
+
+    public WeightGoal saveWeightGoal(WeightGoal goal) throws SQLException {
+        return shardFor(goal.getUserId()).saveWeightGoal(goal);
+    }
+
+    public List<WeightGoal> getActiveWeightGoals(int userId) throws SQLException {
+        return shardFor(userId).getActiveWeightGoals(userId);
+    }
+
+    public void addMilestoneListener(Consumer<GoalMilestone> listener) {
+        shards.forEach(shard -> shard.addMilestoneListener(listener));
+    }
+
+    public void removeMilestoneListener(Consumer<GoalMilestone> listener) {
+        shards.forEach(shard -> shard.removeMilestoneListener(listener));
+    }
+
+    // Cross-shard operations, fanned out to every shard in parallel
+
+    /**
+     * Runs a task against every shard at once and waits for all of them.
+     * If any task fails, the first failure is thrown once the others have
+     * finished, with later ones attached as suppressed.
+     * @return results in shard order
+     */
+    public <T> List<T> fanOut(DatabaseTask<T> task) throws SQLException {
+        return fanOutIndexed((index, shard) -> task.run(shard));
+    }
+
+    /**
+     * Visits every profile on every shard in ascending id order. Shards
+     * are read in parallel and their id-ordered lists merged.
+     * @return number of profiles visited
+     */
+    public int forEachUserProfile(Consumer<UserProfile> consumer) throws SQLException {
+        List<List<UserProfile>> perShard = fanOut(shard -> {
+            List<UserProfile> profiles = new ArrayList<>();
+            shard.forEachUserProfile(profiles::add);
+            return profiles;
+        });
+
+        // Heap entries are {shard, position}, ordered by the profile id there
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> Integer.compare(
+            perShard.get(a[0]).get(a[1]).getId(), perShard.get(b[0]).get(b[1]).getId()));
+        for (int i = 0; i < perShard.size(); i++) {
+            if (!perShard.get(i).isEmpty()) {
+                heads.add(new int[] {i, 0});
+            }
+        }
+        int count = 0;
+        while (!heads.isEmpty()) {
+            int[] head = heads.poll();
+            List<UserProfile> profiles = perShard.get(head[0]);
+            consumer.accept(profiles.get(head[1]));
+            count++;
+            if (++head[1] < profiles.size()) {
+                heads.add(head);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Rebuilds the rollups of every shard
+     * @return total rollup rows written
+     */
+    public int rebuildRollups() throws SQLException {
+        int rows = 0;
+        for (int shardRows : fanOutIndexed((index, shard) -> shard.rebuildRollups())) {
+            rows += shardRows;
+        }
+        return rows;
+    }
+
+    @FunctionalInterface
+    private interface ShardTask<T> {
+        T run(int index, DatabaseHandler shard) throws SQLException;
+    }
+
+    private <T> List<T> fanOutIndexed(ShardTask<T> task) throws SQLException {
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            int index = i;
+            futures.add(fanOutExecutor.submit(() -> task.run(index, shards.get(index))));
+        }
+
+        List<T> results = new ArrayList<>(futures.size());
+        Throwable failure = null;
+        boolean interrupted = false;
+        for (Future<T> future : futures) {
+            while (true) {
+                try {
+                    results.add(future.get());
+                    break;
+                } catch (InterruptedException e) {
+                    // Finish waiting so no task outlives the call
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure instanceof SQLException sqlException) {
+            throw sqlException;
+        }
+        if (failure instanceof RuntimeException runtimeException) {
+            throw runtimeException;
+        }
+        if (failure instanceof Error error) {
+            throw error;
+        }
+        if (failure != null) {
+            throw new SQLException("Shard task failed", failure);
+        }
+        return results;
+    }
+
+    /**
+     * Hands out the next profile id, reserving a new block from the first
+     * shard's sequence when the current one runs out. The block never starts
+     * below the highest id on any shard, so profiles restored or imported
+     * directly into a shard are never collided with.
+     */
+    private int allocateUserId() throws SQLException {
+        synchronized (idLock) {
+            if (nextId == idLimit) {
+                int maxId = 0;
+                for (int shardMax : fanOutIndexed((index, shard) -> shard.getMaxUserProfileId())) {
+                    maxId = Math.max(maxId, shardMax);
+                }
+                int block = Constants.DB_SHARD_ID_BLOCK;
+                nextId = shards.get(0).reserveIds(PROFILE_SEQUENCE, block, maxId + 1L);
+                idLimit = nextId + block;
+            }
+            return Math.toIntExact(nextId++);
+        }
+    }
+
+    @Override
+    public void close() {
+        fanOutExecutor.shutdown();
+        shards.forEach(DatabaseHandler::close);
+    }
+}
@@ -0,0 +1,12 @@
+package weightcalc.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Unit of database work run against a pooled connection.
+ */
+@FunctionalInterface
+interface SqlFunction<T> {
+    T apply(Connection connection) throws SQLException;
+}
@@ -0,0 +1,107 @@
+package weightcalc.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache of prepared statements for one connection, so hot
+ * queries are parsed and planned by SQLite once instead of on every call.
+ * The least recently used statement is closed when the cache is full.
+ *
+ * Not thread-safe: it is only used by whoever currently holds its
+ * connection from the {@link ConnectionPool}. Cached statements stay owned
+ * by the cache, so callers must not close them (close their result sets
+ * instead), and must not hold one across a nested use of the same SQL on
+ * the same connection.
+ */
+final class StatementCache {
+    private final Connection connection;
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> statements;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    // Evicted by removeEldestEntry, closed once the map is consistent again
+    private final List<PreparedStatement> evicted = new ArrayList<>(1);
+
+    StatementCache(Connection connection, int maxSize, LongAdder hits, LongAdder misses,
+            LongAdder evictions) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() > StatementCache.this.maxSize) {
+                    evicted.add(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql) throws SQLException {
+        return prepare(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    /**
+     * Returns the cached statement for sql with its parameters and batch
+     * cleared, preparing and caching it on a miss
+     */
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        // The same text prepared with and without generated keys are two
+        // different statements
+        String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K" + sql : "N" + sql;
+        PreparedStatement pstmt = statements.get(key);
+        if (pstmt != null && !pstmt.isClosed()) {
+            hits.increment();
+            // A failed call may have left values or queued rows behind
+            pstmt.clearParameters();
+            pstmt.clearBatch();
+            return pstmt;
+        }
+        misses.increment();
+        pstmt = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS
+            ? connection.prepareStatement(sql, autoGeneratedKeys)
+            : connection.prepareStatement(sql);
+        statements.put(key, pstmt);
+        for (PreparedStatement old : evicted) {
+            evictions.increment();
+            closeQuietly(old);
+        }
+        evicted.clear();
+        return pstmt;
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    void close() {
+        for (PreparedStatement pstmt : statements.values()) {
+            closeQuietly(pstmt);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing cached statement: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package weightcalc.db;
+
+import java.sql.SQLException;
+
+/**
+ * Wraps a {@link SQLException} raised where checked exceptions cannot be
+ * thrown, such as inside a {@link java.util.stream.Stream} pipeline.
+ */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
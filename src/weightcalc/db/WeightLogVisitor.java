@@ -0,0 +1,11 @@
+package weightcalc.db;
+
+/**
+ * Receives weight log rows straight from the result set, one call per row,
+ * without a WeightLog being allocated for each of them.
+ */
+@FunctionalInterface
+public interface WeightLogVisitor {
+    void visit(int id, int userId, long epochDay, double weight, int caloriesConsumed,
+            int caloriesBurned, int exerciseMinutes, String notes);
+}
@@ -0,0 +1,72 @@
+package weightcalc.db;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import weightcalc.util.Constants;
+
+/**
+ * Opens the configured storage engine. Every entry point (UI, CLI, import
+ * and export) gets its {@link WeightRepository} from here, so the engine is
+ * chosen in one place:
+ *
+ * <ul>
+ * <li>{@code sqlite}: {@link DatabaseHandler}; the location is a database
+ *     file or a JDBC URL</li>
+ * <li>{@code memory}: {@link InMemoryWeightRepository}; the location, if
+ *     given, is a snapshot file loaded on open and written on close</li>
+ * <li>{@code mapped}: {@link MappedWeightRepository}; the location is its
+ *     directory</li>
+ * </ul>
+ *
+ * Without explicit arguments the system properties {@code weightcalc.engine}
+ * and {@code weightcalc.db} are used, defaulting to SQLite in
+ * {@link Constants#DB_NAME}.
+ */
+public final class WeightRepositories {
+    public static final String SQLITE = "sqlite";
+    public static final String MEMORY = "memory";
+    public static final String MAPPED = "mapped";
+
+    /**
+     * Opens the engine named by the system properties
+     */
+    public static WeightRepository open() throws SQLException {
+        return open(System.getProperty(Constants.DB_ENGINE_PROPERTY),
+            System.getProperty(Constants.DB_LOCATION_PROPERTY));
+    }
+
+    /**
+     * @param engine   sqlite, memory or mapped; null for the default
+     * @param location file, URL or directory; null for the engine's default
+     * @throws IllegalArgumentException if the engine is unknown
+     */
+    public static WeightRepository open(String engine, String location) throws SQLException {
+        String name = engine != null ? engine.toLowerCase() : Constants.DB_ENGINE;
+        try {
+            switch (name) {
+                case SQLITE:
+                    if (location == null) {
+                        return DatabaseHandler.open(Constants.DB_URL);
+                    }
+                    return DatabaseHandler.open(location.startsWith("jdbc:") ? location
+                        : "jdbc:sqlite:" + location);
+                case MEMORY:
+                    return location == null ? new InMemoryWeightRepository()
+                        : new InMemoryWeightRepository(Paths.get(location));
+                case MAPPED:
+                    return new MappedWeightRepository(Paths.get(
+                        location != null ? location : Constants.DB_MAPPED_DIRECTORY));
+                default:
+                    throw new IllegalArgumentException("Unknown storage engine: " + engine
+                        + " (expected " + SQLITE + ", " + MEMORY + " or " + MAPPED + ")");
+            }
+        } catch (IOException e) {
+            throw new SQLException("Cannot open " + name + " storage: " + e.getMessage(), e);
+        }
+    }
+
+    private WeightRepositories() {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -0,0 +1,160 @@
+package weightcalc.db;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import weightcalc.model.UserProfile;
+import weightcalc.model.WeightLog;
+import weightcalc.model.WeightLogSeries;
+import weightcalc.util.Constants;
+
+/**
+ * Storage for user profiles and their weight logs. {@link DatabaseHandler}
+ * keeps them in SQLite; {@link InMemoryWeightRepository} keeps them on the
+ * heap for benchmarks, tests and read-heavy services.
+ *
+ * Logs of a user are always returned in (date, id) order. Failures are
+ * reported as SQLException by every engine, so callers handle them the
+ * same way whichever one they are given.
+ */
+public interface WeightRepository extends AutoCloseable {
+
+    // Profiles
+
+    /**
+     * Inserts a profile and sets its generated id
+     */
+    void saveUserProfile(UserProfile profile) throws SQLException;
+
+    void updateUserProfile(UserProfile profile) throws SQLException;
+
+    /**
+     * @return the profile, or null if there is none with that id
+     */
+    UserProfile getUserProfile(int id) throws SQLException;
+
+    /**
+     * Visits every profile in id order
+     * @return number of profiles visited
+     */
+    int forEachUserProfile(Consumer<UserProfile> consumer) throws SQLException;
+
+    /**
+     * Inserts profiles keeping the ids they carry. Either all are inserted
+     * or, if an id is already taken, none.
+     * @return number of profiles inserted
+     */
+    int restoreUserProfiles(Iterator<UserProfile> profiles) throws SQLException;
+
+    /**
+     * Deletes a profile together with everything stored for it
+     * @return true if the profile existed
+     */
+    boolean deleteUserProfile(int id) throws SQLException;
+
+    // Weight logs
+
+    /**
+     * Inserts a log for an existing profile and sets its generated id
+     * @return the same log, now carrying its id
+     */
+    WeightLog saveWeightLog(WeightLog log) throws SQLException;
+
+    /**
+     * Bulk-inserts logs, committing every chunkSize rows, and hands each
+     * generated id to idSink (which may be null). A failure only undoes the
+     * current chunk; earlier chunks stay saved.
+     * @return number of logs saved
+     */
+    long saveWeightLogs(Iterator<WeightLog> logs, int chunkSize, IntConsumer idSink)
+            throws SQLException;
+
+    /**
+     * Bulk-inserts logs using the default chunk size
+     * @return generated ids, in iteration order
+     */
+    default int[] saveWeightLogs(Iterable<WeightLog> logs) throws SQLException {
+        return saveWeightLogs(logs.iterator(), Constants.DB_BATCH_CHUNK_SIZE);
+    }
+
+    default int[] saveWeightLogs(Iterable<WeightLog> logs, int chunkSize) throws SQLException {
+        return saveWeightLogs(logs.iterator(), chunkSize);
+    }
+
+    default int[] saveWeightLogs(Iterator<WeightLog> logs, int chunkSize) throws SQLException {
+        IntStream.Builder ids = IntStream.builder();
+        saveWeightLogs(logs, chunkSize, ids);
+        return ids.build().toArray();
+    }
+
+    List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException;
+
+    /**
+     * Returns one page of a date range, skipping the first offset rows
+     */
+    List<WeightLog> getWeightLogs(int userId, LocalDate startDate, LocalDate endDate,
+            int offset, int limit) throws SQLException;
+
+    default List<WeightLog> getWeightLogsPage(int userId, LocalDate afterDate, int afterId,
+            int limit) throws SQLException {
+        return getWeightLogsPage(userId, afterDate, afterId, LocalDate.MAX, limit);
+    }
+
+    /**
+     * Keyset pagination over (date, id): returns up to limit logs that sort
+     * after (afterDate, afterId) and are dated no later than endDate. Pass
+     * (startDate, 0) for the first page and the last row's date and id for
+     * each following page.
+     */
+    default List<WeightLog> getWeightLogsPage(int userId, LocalDate afterDate, int afterId,
+            LocalDate endDate, int limit) throws SQLException {
+        return getWeightLogsPage(userId, afterDate, afterId, endDate, 0, limit);
+    }
+
+    /**
+     * Keyset seek that then skips the first skip rows, for reaching a page
+     * from the nearest earlier key already known. Costs O(skip) beyond the
+     * seek, against O(offset from the start) for an offset query.
+     */
+    List<WeightLog> getWeightLogsPage(int userId, LocalDate afterDate, int afterId,
+            LocalDate endDate, int skip, int limit) throws SQLException;
+
+    int countWeightLogs(int userId, LocalDate startDate, LocalDate endDate) throws SQLException;
+
+    /**
+     * Walks the logs in a date range without building model objects
+     * @return number of rows visited
+     */
+    int forEachWeightLog(int userId, LocalDate startDate, LocalDate endDate,
+            WeightLogVisitor visitor) throws SQLException;
+
+    /**
+     * Walks every user's logs in (user_id, date, id) order
+     * @return number of rows visited
+     */
+    long forEachWeightLog(WeightLogVisitor visitor) throws SQLException;
+
+    WeightLogSeries getWeightLogSeries(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException;
+
+    /**
+     * Lazily streams the logs in a date range. The stream may hold
+     * resources until closed, so use it in a try-with-resources block.
+     */
+    Stream<WeightLog> streamWeightLogs(int userId, LocalDate startDate, LocalDate endDate)
+            throws SQLException;
+
+    /**
+     * @return the user's most recent log, or null if there is none
+     */
+    WeightLog getLatestWeightLog(int userId) throws SQLException;
+
+    @Override
+    void close();
+}
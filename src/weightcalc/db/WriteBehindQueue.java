@@ -0,0 +1,303 @@
+package weightcalc.db;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import weightcalc.model.WeightLog;
+import weightcalc.util.Constants;
+
+/**
+ * Write-behind mode for log inserts. Any number of threads submit logs into
+ * a bounded lock-free ring; a single writer thread drains it and commits
+ * whatever has arrived as one transaction, once a batch fills up or the
+ * first waiting row is a few milliseconds old. Many concurrent inserts thus
+ * share one commit (and one fsync) instead of paying for one each.
+ *
+ * Each submission returns a future that completes with the saved log, id
+ * set, once its transaction has committed. Futures complete on the writer
+ * thread, so dependent work should be cheap or use an async stage.
+ */
+public class WriteBehindQueue implements AutoCloseable {
+    private final WeightRepository db;
+    private final int maxBatch;
+    private final long maxDelayNanos;
+
+    // Bounded MPSC ring (Vyukov's sequenced slots). A slot may be written
+    // by the producer that claimed position p once its sequence equals p,
+    // and read by the writer once it equals p + 1.
+    private final int mask;
+    private final Entry[] slots;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean writerIdle;
+    private volatile boolean closed;
+    // Producers between their closed check and finishing their enqueue
+    private final AtomicInteger activeProducers = new AtomicInteger();
+
+    private final LongAdder committedBatches = new LongAdder();
+    private final LongAdder committedRows = new LongAdder();
+    private final LongAdder fullWaits = new LongAdder();
+
+    private static final class Entry {
+        final WeightLog log;
+        final CompletableFuture<WeightLog> future = new CompletableFuture<>();
+
+        Entry(WeightLog log) {
+            this.log = log;
+        }
+    }
+
+    public WriteBehindQueue(WeightRepository db) {
+        this(db, Constants.DB_WRITE_BEHIND_CAPACITY, Constants.DB_WRITE_BEHIND_BATCH,
+            Constants.DB_WRITE_BEHIND_DELAY_MS);
+    }
+
+    /**
+     * @param capacity     rows the queue holds before submitters wait;
+     *                     rounded up to a power of two
+     * @param maxBatch     rows committed per transaction at most
+     * @param maxDelayMillis how long the oldest waiting row may wait for
+     *                     its batch to fill up
+     */
+    public WriteBehindQueue(WeightRepository db, int capacity, int maxBatch, long maxDelayMillis) {
+        if (capacity < 2 || maxBatch < 1 || maxDelayMillis < 0) {
+            throw new IllegalArgumentException(
+                "capacity must be at least 2, maxBatch at least 1 and maxDelayMillis not negative");
+        }
+        this.db = db;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = size - 1;
+        this.slots = new Entry[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        this.writer = new Thread(this::drainLoop, "db-write-behind");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues a log, waiting for space while the queue is full
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public CompletableFuture<WeightLog> submit(WeightLog log) {
+        Entry entry = new Entry(log);
+        activeProducers.incrementAndGet();
+        try {
+            ensureOpen();
+            if (!offer(entry)) {
+                fullWaits.increment();
+                do {
+                    // The writer is most likely mid-commit; let it catch up
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(Math.max(maxDelayNanos / 4, 50_000));
+                    if (Thread.interrupted()) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while waiting for queue space");
+                    }
+                    ensureOpen();
+                } while (!offer(entry));
+            }
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+        return entry.future;
+    }
+
+    /**
+     * Queues a log unless the queue is full
+     * @return the log's future, or null if there was no room
+     * @throws IllegalStateException if the queue has been closed
+     */
+    public CompletableFuture<WeightLog> trySubmit(WeightLog log) {
+        Entry entry = new Entry(log);
+        activeProducers.incrementAndGet();
+        try {
+            ensureOpen();
+            return offer(entry) ? entry.future : null;
+        } finally {
+            activeProducers.decrementAndGet();
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Write-behind queue is closed");
+        }
+    }
+
+    private boolean offer(Entry entry) {
+        long position;
+        while (true) {
+            position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (sequence < position) {
+                // The slot still holds the row from one lap ago
+                return false;
+            }
+            // Otherwise another producer claimed it first; reread the tail
+        }
+        int index = (int) position & mask;
+        slots[index] = entry;
+        sequences.set(index, position + 1);
+
+        // Wake the writer only when it sleeps with nothing to do, or when a
+        // full batch is ready; otherwise it finds the row on its own
+        if (writerIdle || position + 1 - head.get() >= maxBatch) {
+            LockSupport.unpark(writer);
+        }
+        return true;
+    }
+
+    // Writer thread only
+    private Entry poll() {
+        long position = head.get();
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) {
+            return null;
+        }
+        Entry entry = slots[index];
+        slots[index] = null;
+        sequences.set(index, position + mask + 1);
+        head.lazySet(position + 1);
+        return entry;
+    }
+
+    private int drainTo(List<Entry> batch) {
+        int added = 0;
+        Entry entry;
+        while (batch.size() < maxBatch && (entry = poll()) != null) {
+            batch.add(entry);
+            added++;
+        }
+        return added;
+    }
+
+    private void drainLoop() {
+        List<Entry> batch = new ArrayList<>(maxBatch);
+        while (true) {
+            if (drainTo(batch) == 0) {
+                if (closed && activeProducers.get() == 0 && isEmpty()) {
+                    return;
+                }
+                writerIdle = true;
+                // Recheck after announcing, so a row offered meanwhile
+                // either is seen here or unparks us
+                if (isEmpty() && !closed) {
+                    LockSupport.park(this);
+                }
+                writerIdle = false;
+                continue;
+            }
+
+            // Give concurrent submitters a moment to join this commit
+            long deadline = System.nanoTime() + maxDelayNanos;
+            while (batch.size() < maxBatch && !closed) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    break;
+                }
+                if (drainTo(batch) == 0) {
+                    LockSupport.parkNanos(this, remaining);
+                }
+            }
+            drainTo(batch);
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    private boolean isEmpty() {
+        return sequences.get((int) head.get() & mask) != head.get() + 1;
+    }
+
+    private void commit(List<Entry> batch) {
+        // The batch is one chunk, and ids are only handed out once it has
+        // committed, so any id seen means the rows are stored
+        int[] savedIds = {0};
+        try {
+            db.saveWeightLogs(batch.stream().map(entry -> entry.log).iterator(), batch.size(),
+                id -> savedIds[0]++);
+            completeBatch(batch);
+        } catch (SQLException | RuntimeException e) {
+            if (savedIds[0] > 0) {
+                // Failed after the commit: retrying would store the rows twice
+                System.err.println("Write-behind batch committed with error: " + e.getMessage());
+                completeBatch(batch);
+                return;
+            }
+            if (batch.size() == 1) {
+                batch.get(0).future.completeExceptionally(e);
+                return;
+            }
+            // One bad row must not fail its neighbours: retry each on its own
+            for (Entry entry : batch) {
+                try {
+                    entry.future.complete(db.saveWeightLog(entry.log));
+                    committedRows.increment();
+                } catch (SQLException | RuntimeException rowError) {
+                    entry.future.completeExceptionally(rowError);
+                }
+            }
+        }
+    }
+
+    private void completeBatch(List<Entry> batch) {
+        committedBatches.increment();
+        committedRows.add(batch.size());
+        for (Entry entry : batch) {
+            entry.future.complete(entry.log);
+        }
+    }
+
+    /**
+     * Rows waiting to be committed
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int getCapacity() { return mask + 1; }
+    public long getCommittedBatches() { return committedBatches.sum(); }
+    public long getCommittedRows() { return committedRows.sum(); }
+    public long getFullWaits() { return fullWaits.sum(); }
+
+    /**
+     * Stops accepting rows, commits everything already queued and waits for
+     * the writer thread to finish
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                // The flush must finish, or queued futures would never complete
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
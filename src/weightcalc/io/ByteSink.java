@@ -0,0 +1,175 @@
+package weightcalc.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import weightcalc.util.DateUtils;
+
+/**
+ * Buffered byte writer over a channel. Numbers, dates and text are encoded
+ * straight into the buffer, so writing a row creates no intermediate
+ * strings except for the rare double that has no short exact form.
+ */
+final class ByteSink implements Closeable {
+    private final WritableByteChannel channel;
+    private final byte[] buf;
+    private final ByteBuffer buffer;
+    private int pos;
+    private long bytesWritten;
+
+    ByteSink(WritableByteChannel channel, int bufferSize) {
+        this.channel = channel;
+        this.buf = new byte[bufferSize];
+        this.buffer = ByteBuffer.wrap(buf);
+    }
+
+    long bytesWritten() {
+        return bytesWritten + pos;
+    }
+
+    /**
+     * Makes room for n more bytes; n must not exceed the buffer size
+     */
+    private void ensure(int n) throws IOException {
+        if (buf.length - pos < n) {
+            flush();
+        }
+    }
+
+    void put(byte b) throws IOException {
+        ensure(1);
+        buf[pos++] = b;
+    }
+
+    void put(byte[] bytes) throws IOException {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    /**
+     * Writes a string known to be ASCII, such as a label or column name
+     */
+    void ascii(String s) throws IOException {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            buf[pos++] = (byte) s.charAt(i);
+        }
+    }
+
+    void integer(long value) throws IOException {
+        ensure(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                ascii(Long.toString(value));
+                return;
+            }
+            buf[pos++] = '-';
+            value = -value;
+        }
+        int end = pos + digitCount(value);
+        for (int i = end - 1; i >= pos; i--) {
+            buf[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos = end;
+    }
+
+    private static int digitCount(long value) {
+        int count = 1;
+        while (value >= 10) {
+            value /= 10;
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Writes a double so that it parses back to the same value. Values with
+     * at most three decimals, i.e. every weight or height a user enters, are
+     * written as integer and fraction without going through a String.
+     */
+    void decimal(double value) throws IOException {
+        if (Math.abs(value) < 1e12) {
+            long scaled = Math.round(value * 1000);
+            if (scaled / 1000.0 == value) {
+                if (scaled < 0) {
+                    put((byte) '-');
+                    scaled = -scaled;
+                }
+                integer(scaled / 1000);
+                int fraction = (int) (scaled % 1000);
+                if (fraction != 0) {
+                    ensure(4);
+                    buf[pos++] = '.';
+                    buf[pos++] = (byte) ('0' + fraction / 100);
+                    if (fraction % 100 != 0) {
+                        buf[pos++] = (byte) ('0' + fraction / 10 % 10);
+                        if (fraction % 10 != 0) {
+                            buf[pos++] = (byte) ('0' + fraction % 10);
+                        }
+                    }
+                }
+                return;
+            }
+        }
+        ascii(Double.toString(value));
+    }
+
+    /**
+     * Writes an epoch day as yyyy-MM-dd
+     */
+    void date(long epochDay) throws IOException {
+        ensure(DateUtils.DB_DATE_LENGTH);
+        pos = DateUtils.writeEpochDay(epochDay, buf, pos);
+    }
+
+    /**
+     * Writes one UTF-16 char, or a surrogate pair starting at s[i], as UTF-8
+     * @return number of chars consumed
+     */
+    int utf8(CharSequence s, int i) throws IOException {
+        ensure(4);
+        char c = s.charAt(i);
+        if (c < 0x80) {
+            buf[pos++] = (byte) c;
+        } else if (c < 0x800) {
+            buf[pos++] = (byte) (0xC0 | c >> 6);
+            buf[pos++] = (byte) (0x80 | c & 0x3F);
+        } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                && Character.isLowSurrogate(s.charAt(i + 1))) {
+            int cp = Character.toCodePoint(c, s.charAt(i + 1));
+            buf[pos++] = (byte) (0xF0 | cp >> 18);
+            buf[pos++] = (byte) (0x80 | cp >> 12 & 0x3F);
+            buf[pos++] = (byte) (0x80 | cp >> 6 & 0x3F);
+            buf[pos++] = (byte) (0x80 | cp & 0x3F);
+            return 2;
+        } else if (Character.isSurrogate(c)) {
+            // Lone surrogates become '?', as String.getBytes would do
+            buf[pos++] = '?';
+        } else {
+            buf[pos++] = (byte) (0xE0 | c >> 12);
+            buf[pos++] = (byte) (0x80 | c >> 6 & 0x3F);
+            buf[pos++] = (byte) (0x80 | c & 0x3F);
+        }
+        return 1;
+    }
+
+    void flush() throws IOException {
+        buffer.clear().limit(pos);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        bytesWritten += pos;
+        pos = 0;
+    }
+
+    /**
+     * Flushes the buffer; the channel is closed by its owner
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,232 @@
+package weightcalc.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import weightcalc.db.WeightRepository;
+import weightcalc.model.UserProfile;
+import weightcalc.util.Constants;
+
+/**
+ * Writes weight logs or user profiles to a CSV or NDJSON file straight from
+ * a database cursor. Rows are encoded into one reused buffer and written to
+ * a FileChannel, so the export runs in constant memory whatever its size.
+ */
+public final class DataExporter {
+    private final WeightRepository db;
+    private final int bufferSize;
+
+    public DataExporter(WeightRepository db) {
+        this(db, Constants.IO_BUFFER_SIZE);
+    }
+
+    public DataExporter(WeightRepository db, int bufferSize) {
+        this.db = db;
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Exports every row of the dataset, replacing the file if it exists
+     * @return number of rows written
+     */
+    public long export(Dataset dataset, Path file, DataFormat format)
+            throws IOException, SQLException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             ByteSink sink = new ByteSink(channel, bufferSize)) {
+            RowWriter writer = new RowWriter(sink, dataset, format);
+            writer.header();
+            try {
+                if (dataset == Dataset.LOGS) {
+                    return db.forEachWeightLog((id, userId, epochDay, weight, consumed, burned,
+                            minutes, notes) -> {
+                        try {
+                            writer.integer(Dataset.ID, id);
+                            writer.integer(Dataset.LOG_USER_ID, userId);
+                            writer.date(Dataset.LOG_DATE, epochDay);
+                            writer.decimal(Dataset.LOG_WEIGHT, weight);
+                            writer.integer(Dataset.LOG_CALORIES_CONSUMED, consumed);
+                            writer.integer(Dataset.LOG_CALORIES_BURNED, burned);
+                            writer.integer(Dataset.LOG_EXERCISE_MINUTES, minutes);
+                            writer.text(Dataset.LOG_NOTES, notes);
+                            writer.end();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                }
+                return db.forEachUserProfile(profile -> {
+                    try {
+                        writeProfile(writer, profile);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static void writeProfile(RowWriter writer, UserProfile profile) throws IOException {
+        writer.integer(Dataset.ID, profile.getId());
+        writer.decimal(Dataset.PROFILE_HEIGHT, profile.getHeight());
+        writer.decimal(Dataset.PROFILE_CURRENT_WEIGHT, profile.getCurrentWeight());
+        writer.decimal(Dataset.PROFILE_TARGET_WEIGHT, profile.getTargetWeight());
+        writer.integer(Dataset.PROFILE_AGE, profile.getAge());
+        writer.label(Dataset.PROFILE_GENDER, profile.getGender().getLabel());
+        writer.label(Dataset.PROFILE_ACTIVITY_LEVEL, profile.getActivityLevel().getLabel());
+        writer.end();
+    }
+
+    /**
+     * Encodes one row at a time in either format. Fields must be written in
+     * column order.
+     */
+    private static final class RowWriter {
+        private final ByteSink sink;
+        private final Dataset dataset;
+        private final boolean json;
+        // JSON: {"id": for the first column, ,"name": for the others
+        private final byte[][] keys;
+
+        RowWriter(ByteSink sink, Dataset dataset, DataFormat format) {
+            this.sink = sink;
+            this.dataset = dataset;
+            this.json = format == DataFormat.NDJSON;
+            this.keys = new byte[dataset.columnCount()][];
+            for (int i = 0; i < keys.length; i++) {
+                String key = (i == 0 ? "{\"" : ",\"") + dataset.column(i) + "\":";
+                keys[i] = key.getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+
+        void header() throws IOException {
+            if (json) {
+                return;
+            }
+            for (int i = 0; i < dataset.columnCount(); i++) {
+                if (i > 0) {
+                    sink.put((byte) ',');
+                }
+                sink.put(dataset.columnBytes(i));
+            }
+            sink.put((byte) '\n');
+        }
+
+        private void field(int column) throws IOException {
+            if (json) {
+                sink.put(keys[column]);
+            } else if (column > 0) {
+                sink.put((byte) ',');
+            }
+        }
+
+        void integer(int column, long value) throws IOException {
+            field(column);
+            sink.integer(value);
+        }
+
+        void decimal(int column, double value) throws IOException {
+            field(column);
+            sink.decimal(value);
+        }
+
+        void date(int column, long epochDay) throws IOException {
+            field(column);
+            if (json) {
+                sink.put((byte) '"');
+            }
+            sink.date(epochDay);
+            if (json) {
+                sink.put((byte) '"');
+            }
+        }
+
+        // Enum labels are plain ASCII without quotes, commas or escapes
+        void label(int column, String label) throws IOException {
+            field(column);
+            if (json) {
+                sink.put((byte) '"');
+            }
+            sink.ascii(label);
+            if (json) {
+                sink.put((byte) '"');
+            }
+        }
+
+        void text(int column, String value) throws IOException {
+            field(column);
+            if (json) {
+                jsonText(value);
+            } else {
+                csvText(value);
+            }
+        }
+
+        void end() throws IOException {
+            if (json) {
+                sink.put((byte) '}');
+            }
+            sink.put((byte) '\n');
+        }
+
+        private void csvText(String value) throws IOException {
+            if (value == null || value.isEmpty()) {
+                return;
+            }
+            boolean quote = value.charAt(0) == ' ' || value.charAt(value.length() - 1) == ' ';
+            for (int i = 0; i < value.length() && !quote; i++) {
+                char c = value.charAt(i);
+                quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (quote) {
+                sink.put((byte) '"');
+            }
+            for (int i = 0; i < value.length(); ) {
+                if (value.charAt(i) == '"') {
+                    sink.put((byte) '"');
+                }
+                i += sink.utf8(value, i);
+            }
+            if (quote) {
+                sink.put((byte) '"');
+            }
+        }
+
+        private void jsonText(String value) throws IOException {
+            if (value == null) {
+                sink.ascii("null");
+                return;
+            }
+            sink.put((byte) '"');
+            for (int i = 0; i < value.length(); ) {
+                char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    sink.put((byte) '\\');
+                    sink.put((byte) c);
+                    i++;
+                } else if (c == '\n') {
+                    sink.ascii("\\n");
+                    i++;
+                } else if (c == '\r') {
+                    sink.ascii("\\r");
+                    i++;
+                } else if (c == '\t') {
+                    sink.ascii("\\t");
+                    i++;
+                } else if (c < 0x20) {
+                    sink.ascii(String.format("\\u%04x", (int) c));
+                    i++;
+                } else {
+                    i += sink.utf8(value, i);
+                }
+            }
+            sink.put((byte) '"');
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package weightcalc.io;
+
+import java.nio.file.Path;
+
+/**
+ * File formats for exports and imports. CSV has a header row naming the
+ * columns and quotes fields as in RFC 4180; NDJSON has one flat JSON object
+ * per line.
+ */
+public enum DataFormat {
+    CSV,
+    NDJSON;
+
+    /**
+     * Picks the format from a file extension: .csv, or .ndjson/.jsonl/.json
+     * @return the format, or null if the extension is not recognised
+     */
+    public static DataFormat fromPath(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".csv")) {
+            return CSV;
+        }
+        if (name.endsWith(".ndjson") || name.endsWith(".jsonl") || name.endsWith(".json")) {
+            return NDJSON;
+        }
+        return null;
+    }
+}
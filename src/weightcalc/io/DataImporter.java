@@ -0,0 +1,157 @@
+package weightcalc.io;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import weightcalc.db.WeightRepository;
+import weightcalc.model.ActivityLevel;
+import weightcalc.model.Gender;
+import weightcalc.model.UserProfile;
+import weightcalc.model.WeightLog;
+import weightcalc.util.Constants;
+
+/**
+ * Reads weight logs or user profiles from CSV or NDJSON files written by
+ * {@link DataExporter} (or by hand) and feeds them lazily into the batched
+ * insert path, so nothing but the current chunk is held in memory.
+ *
+ * Profiles keep their ids, so logs imported afterwards still refer to the
+ * right user; import profiles first. Logs get new ids. Missing numeric
+ * fields default to 0; user_id, date and weight are required for logs.
+ */
+public final class DataImporter {
+    private final WeightRepository db;
+    private final int bufferSize;
+    private final int chunkSize;
+
+    public DataImporter(WeightRepository db) {
+        this(db, Constants.IO_BUFFER_SIZE, Constants.DB_BATCH_CHUNK_SIZE);
+    }
+
+    public DataImporter(WeightRepository db, int bufferSize, int chunkSize) {
+        this.db = db;
+        this.bufferSize = bufferSize;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Imports every record in the file. Logs are committed chunk by chunk,
+     * so a bad record leaves the chunks before it in place; profiles are
+     * imported in one transaction.
+     * @return number of rows imported
+     */
+    public long importFile(Dataset dataset, Path file, DataFormat format)
+            throws IOException, SQLException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            RecordReader reader = new RecordReader(channel, bufferSize, format, dataset);
+            try {
+                if (dataset == Dataset.LOGS) {
+                    reader.readHeader(Dataset.LOG_USER_ID, Dataset.LOG_DATE, Dataset.LOG_WEIGHT);
+                    return db.saveWeightLogs(new RecordIterator<>(reader) {
+                        @Override
+                        WeightLog read() throws IOException {
+                            return readLog(reader);
+                        }
+                    }, chunkSize, null);
+                }
+                reader.readHeader(Dataset.ID, Dataset.PROFILE_HEIGHT, Dataset.PROFILE_CURRENT_WEIGHT,
+                    Dataset.PROFILE_TARGET_WEIGHT, Dataset.PROFILE_AGE, Dataset.PROFILE_GENDER,
+                    Dataset.PROFILE_ACTIVITY_LEVEL);
+                return db.restoreUserProfiles(new RecordIterator<>(reader) {
+                    @Override
+                    UserProfile read() throws IOException {
+                        return readProfile(reader);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static WeightLog readLog(RecordReader reader) throws IOException {
+        if (!reader.has(Dataset.LOG_USER_ID) || !reader.has(Dataset.LOG_WEIGHT)) {
+            throw reader.malformed("user_id and weight are required");
+        }
+        WeightLog log = new WeightLog(
+            reader.getInt(Dataset.LOG_USER_ID, 0),
+            LocalDate.ofEpochDay(reader.getEpochDay(Dataset.LOG_DATE)),
+            reader.getDouble(Dataset.LOG_WEIGHT, 0),
+            reader.getInt(Dataset.LOG_CALORIES_CONSUMED, 0),
+            reader.getInt(Dataset.LOG_CALORIES_BURNED, 0),
+            reader.getInt(Dataset.LOG_EXERCISE_MINUTES, 0));
+        log.setNotes(reader.getString(Dataset.LOG_NOTES));
+        return log;
+    }
+
+    private static UserProfile readProfile(RecordReader reader) throws IOException {
+        if (!reader.has(Dataset.ID)) {
+            throw reader.malformed("id is required");
+        }
+        String genderText = reader.getString(Dataset.PROFILE_GENDER);
+        String activityText = reader.getString(Dataset.PROFILE_ACTIVITY_LEVEL);
+        Gender gender = Gender.fromLabel(genderText);
+        ActivityLevel activityLevel = ActivityLevel.fromLabel(activityText);
+        if (gender == null || activityLevel == null) {
+            throw reader.malformed("unknown gender or activity level: " 
+                + genderText + ", " + activityText);
+        }
+        UserProfile profile = new UserProfile(
+            reader.getDouble(Dataset.PROFILE_HEIGHT, 0),
+            reader.getDouble(Dataset.PROFILE_CURRENT_WEIGHT, 0),
+            reader.getDouble(Dataset.PROFILE_TARGET_WEIGHT, 0),
+            reader.getInt(Dataset.PROFILE_AGE, 0),
+            gender,
+            activityLevel);
+        profile.setId(reader.getInt(Dataset.ID, 0));
+        return profile;
+    }
+
+    /**
+     * Adapts the reader to the Iterator the batch insert methods take.
+     * Parse errors surface as UncheckedIOException.
+     */
+    private abstract static class RecordIterator<T> implements Iterator<T> {
+        private final RecordReader reader;
+        private boolean ready;
+        private boolean done;
+
+        RecordIterator(RecordReader reader) {
+            this.reader = reader;
+        }
+
+        abstract T read() throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            if (!ready && !done) {
+                try {
+                    ready = reader.next();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                done = !ready;
+            }
+            return ready;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            try {
+                return read();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package weightcalc.io;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import weightcalc.db.WeightRepositories;
+import weightcalc.db.WeightRepository;
+import weightcalc.util.Constants;
+
+/**
+ * Command-line entry point for moving data in and out of a database:
+ *
+ * <pre>
+ * java -cp ... weightcalc.io.DataTransfer [--engine sqlite|memory|mapped]
+ *     [--db file|jdbc-url|directory] [--format csv|ndjson]
+ *     export|import logs|profiles file
+ * </pre>
+ *
+ * The engine and location default to the weightcalc.engine and
+ * weightcalc.db system properties, see {@link WeightRepositories}. The
+ * format defaults to the file extension. When importing into a fresh
+ * database, import profiles before logs.
+ */
+public final class DataTransfer {
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    /**
+     * Runs one transfer and returns the process exit code
+     */
+    public static int run(String[] args) {
+        String engine = System.getProperty(Constants.DB_ENGINE_PROPERTY);
+        String location = System.getProperty(Constants.DB_LOCATION_PROPERTY);
+        DataFormat format = null;
+        String[] positional = new String[3];
+        int count = 0;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--db") && i + 1 < args.length) {
+                location = args[++i];
+            } else if (arg.equals("--engine") && i + 1 < args.length) {
+                engine = args[++i];
+            } else if (arg.equals("--format") && i + 1 < args.length) {
+                try {
+                    format = DataFormat.valueOf(args[++i].toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    return usage("Unknown format: " + args[i]);
+                }
+            } else if (arg.startsWith("--") || count == positional.length) {
+                return usage("Unexpected argument: " + arg);
+            } else {
+                positional[count++] = arg;
+            }
+        }
+        if (count < positional.length) {
+            return usage(null);
+        }
+
+        String command = positional[0];
+        if (!command.equals("export") && !command.equals("import")) {
+            return usage("Unknown command: " + command);
+        }
+        Dataset dataset = Dataset.fromName(positional[1]);
+        if (dataset == null) {
+            return usage("Unknown dataset: " + positional[1]);
+        }
+        Path file = Paths.get(positional[2]);
+        if (format == null) {
+            format = DataFormat.fromPath(file);
+            if (format == null) {
+                return usage("Cannot tell the format of " + file + ", use --format");
+            }
+        }
+
+        WeightRepository db;
+        try {
+            db = WeightRepositories.open(engine, location);
+        } catch (IllegalArgumentException e) {
+            return usage(e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Cannot open database: " + e.getMessage());
+            return 1;
+        }
+        try {
+            long start = System.nanoTime();
+            long rows;
+            if (command.equals("export")) {
+                rows = new DataExporter(db).export(dataset, file, format);
+            } else {
+                rows = new DataImporter(db).importFile(dataset, file, format);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            double megabytes = Files.size(file) / (1024.0 * 1024.0);
+            System.out.printf("%sed %d %s in %.2f s (%.1f MB/s)%n", command, rows,
+                dataset.getName(), seconds, megabytes / Math.max(seconds, 1e-9));
+            return 0;
+        } catch (Exception e) {
+            System.err.println(command + " failed: " + e.getMessage());
+            return 1;
+        } finally {
+            db.close();
+        }
+    }
+
+    private static int usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Usage: DataTransfer [--engine sqlite|memory|mapped] "
+            + "[--db file|jdbc-url|directory] [--format csv|ndjson] "
+            + "export|import logs|profiles file");
+        return 2;
+    }
+
+    private DataTransfer() {
+        // Private constructor to prevent instantiation
+    }
+}
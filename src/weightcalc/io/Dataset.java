@@ -0,0 +1,92 @@
+package weightcalc.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Tables that can be exported and imported, with their columns in file
+ * order. Column names match the database and are used as CSV headers and
+ * JSON keys.
+ */
+public enum Dataset {
+    LOGS("logs", "id", "user_id", "date", "weight", "calories_consumed", "calories_burned",
+        "exercise_minutes", "notes"),
+    PROFILES("profiles", "id", "height", "current_weight", "target_weight", "age", "gender",
+        "activity_level");
+
+    // Column indexes, shared by both datasets where the name matches
+    static final int ID = 0;
+    static final int LOG_USER_ID = 1;
+    static final int LOG_DATE = 2;
+    static final int LOG_WEIGHT = 3;
+    static final int LOG_CALORIES_CONSUMED = 4;
+    static final int LOG_CALORIES_BURNED = 5;
+    static final int LOG_EXERCISE_MINUTES = 6;
+    static final int LOG_NOTES = 7;
+    static final int PROFILE_HEIGHT = 1;
+    static final int PROFILE_CURRENT_WEIGHT = 2;
+    static final int PROFILE_TARGET_WEIGHT = 3;
+    static final int PROFILE_AGE = 4;
+    static final int PROFILE_GENDER = 5;
+    static final int PROFILE_ACTIVITY_LEVEL = 6;
+
+    private final String name;
+    private final String[] columns;
+    private final byte[][] columnBytes;
+
+    Dataset(String name, String... columns) {
+        this.name = name;
+        this.columns = columns;
+        this.columnBytes = new byte[columns.length][];
+        for (int i = 0; i < columns.length; i++) {
+            columnBytes[i] = columns[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    public String getName() { return name; }
+    public int columnCount() { return columns.length; }
+    public String column(int index) { return columns[index]; }
+
+    byte[] columnBytes(int index) {
+        return columnBytes[index];
+    }
+
+    /**
+     * Index of the named column, or -1 if there is none
+     */
+    int indexOf(String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equalsIgnoreCase(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Index of the column whose ASCII name is buf[from, to), or -1. Avoids
+     * decoding keys while parsing JSON.
+     */
+    int indexOf(byte[] buf, int from, int to) {
+        int length = to - from;
+        for (int i = 0; i < columnBytes.length; i++) {
+            byte[] name = columnBytes[i];
+            if (name.length == length && Arrays.equals(name, 0, length, buf, from, to)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses "logs" or "profiles", returning null if unknown
+     */
+    public static Dataset fromName(String name) {
+        for (Dataset dataset : values()) {
+            if (dataset.name.equalsIgnoreCase(name)) {
+                return dataset;
+            }
+        }
+        return null;
+    }
+}
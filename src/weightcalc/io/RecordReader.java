@@ -0,0 +1,519 @@
+package weightcalc.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import weightcalc.util.DateUtils;
+
+/**
+ * Reads CSV or NDJSON records from a channel into a reusable byte buffer.
+ * Parsing a record only records where each field starts and ends in the
+ * buffer; numbers and dates are then decoded in place and strings are only
+ * created for text fields. A record may be larger than the initial buffer,
+ * which then grows.
+ */
+final class RecordReader {
+    private static final byte ABSENT = 0;
+    private static final byte RAW = 1;
+    // CSV field that was quoted and contains doubled quotes
+    private static final byte QUOTED = 2;
+    // JSON string containing backslash escapes
+    private static final byte ESCAPED = 3;
+
+    // Powers of ten that are exact as doubles
+    private static final double[] POW10 = new double[23];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+    }
+
+    private final ReadableByteChannel channel;
+    private final DataFormat format;
+    private final Dataset dataset;
+    private byte[] buf;
+    private int start;
+    private int limit;
+    private boolean eof;
+
+    private final int[] fieldStart;
+    private final int[] fieldEnd;
+    private final byte[] fieldKind;
+    // CSV only: dataset column of each position in the header, or -1
+    private int[] csvColumns;
+    private long recordNumber;
+
+    RecordReader(ReadableByteChannel channel, int bufferSize, DataFormat format, Dataset dataset) {
+        this.channel = channel;
+        this.format = format;
+        this.dataset = dataset;
+        this.buf = new byte[bufferSize];
+        this.fieldStart = new int[dataset.columnCount()];
+        this.fieldEnd = new int[dataset.columnCount()];
+        this.fieldKind = new byte[dataset.columnCount()];
+    }
+
+    long recordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Reads the CSV header, if any, and checks that the required columns
+     * are present
+     */
+    void readHeader(int... requiredColumns) throws IOException {
+        if (format == DataFormat.CSV) {
+            int end = nextRecordEnd();
+            if (end < 0) {
+                throw new IOException("Missing CSV header");
+            }
+            csvColumns = parseHeader(end);
+            for (int column : requiredColumns) {
+                if (indexOf(csvColumns, column) < 0) {
+                    throw new IOException("CSV header has no " + dataset.column(column) + " column");
+                }
+            }
+        }
+    }
+
+    /**
+     * Advances to the next non-blank record
+     * @return false at end of input
+     */
+    boolean next() throws IOException {
+        while (true) {
+            int end = nextRecordEnd();
+            if (end < 0) {
+                return false;
+            }
+            recordNumber++;
+            int lineEnd = end > start && buf[end - 1] == '\r' ? end - 1 : end;
+            if (isBlank(start, lineEnd)) {
+                start = end + 1;
+                continue;
+            }
+            Arrays.fill(fieldKind, ABSENT);
+            if (format == DataFormat.CSV) {
+                parseCsv(start, lineEnd);
+            } else {
+                parseJson(start, lineEnd);
+            }
+            start = end + 1;
+            return true;
+        }
+    }
+
+    /**
+     * Finds the end of the record at start, reading more input as needed.
+     * @return index of the terminating newline (or limit at end of input),
+     *         -1 if there are no more records
+     */
+    private int nextRecordEnd() throws IOException {
+        int scanFrom = start;
+        boolean quoted = false;
+        while (true) {
+            for (int i = scanFrom; i < limit; i++) {
+                byte b = buf[i];
+                if (b == '"' && format == DataFormat.CSV) {
+                    quoted = !quoted;
+                } else if (b == '\n' && !quoted) {
+                    return i;
+                }
+            }
+            scanFrom = limit;
+            if (eof) {
+                return start < limit ? limit : -1;
+            }
+            int consumed = start;
+            fill();
+            scanFrom -= consumed;
+        }
+    }
+
+    // Moves the current record to the front, growing the buffer if full
+    private void fill() throws IOException {
+        if (start > 0) {
+            System.arraycopy(buf, start, buf, 0, limit - start);
+            limit -= start;
+            start = 0;
+        }
+        if (limit == buf.length) {
+            buf = Arrays.copyOf(buf, buf.length * 2);
+        }
+        ByteBuffer target = ByteBuffer.wrap(buf, limit, buf.length - limit);
+        int read = channel.read(target);
+        if (read < 0) {
+            eof = true;
+        } else {
+            limit += read;
+        }
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] != ' ' && buf[i] != '\t') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int[] parseHeader(int end) throws IOException {
+        int lineEnd = end > start && buf[end - 1] == '\r' ? end - 1 : end;
+        // Strip a UTF-8 byte order mark
+        if (lineEnd - start >= 3 && buf[start] == (byte) 0xEF && buf[start + 1] == (byte) 0xBB
+                && buf[start + 2] == (byte) 0xBF) {
+            start += 3;
+        }
+        int[] columns = new int[dataset.columnCount() * 2];
+        int count = 0;
+        int i = start;
+        while (true) {
+            int fieldEnd = i;
+            while (fieldEnd < lineEnd && buf[fieldEnd] != ',') {
+                fieldEnd++;
+            }
+            String name = new String(buf, i, fieldEnd - i, StandardCharsets.UTF_8).strip();
+            if (name.length() >= 2 && name.startsWith("\"") && name.endsWith("\"")) {
+                name = name.substring(1, name.length() - 1);
+            }
+            if (count == columns.length) {
+                columns = Arrays.copyOf(columns, count * 2);
+            }
+            columns[count++] = dataset.indexOf(name);
+            if (fieldEnd >= lineEnd) {
+                break;
+            }
+            i = fieldEnd + 1;
+        }
+        start = end + 1;
+        return Arrays.copyOf(columns, count);
+    }
+
+    private static int indexOf(int[] array, int value) {
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void parseCsv(int from, int to) throws IOException {
+        int position = 0;
+        int i = from;
+        while (true) {
+            int column = position < csvColumns.length ? csvColumns[position] : -1;
+            int valueStart;
+            int valueEnd;
+            byte kind = RAW;
+            int next;
+            if (i < to && buf[i] == '"') {
+                valueStart = i + 1;
+                int j = valueStart;
+                while (true) {
+                    if (j >= to) {
+                        throw malformed("unterminated quoted field");
+                    }
+                    if (buf[j] == '"') {
+                        if (j + 1 < to && buf[j + 1] == '"') {
+                            kind = QUOTED;
+                            j += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    j++;
+                }
+                valueEnd = j;
+                next = j + 1;
+                if (next < to && buf[next] != ',') {
+                    throw malformed("unexpected character after quoted field");
+                }
+            } else {
+                valueStart = i;
+                next = i;
+                while (next < to && buf[next] != ',') {
+                    next++;
+                }
+                valueEnd = next;
+            }
+            if (column >= 0) {
+                fieldStart[column] = valueStart;
+                fieldEnd[column] = valueEnd;
+                fieldKind[column] = kind;
+            }
+            if (next >= to) {
+                return;
+            }
+            i = next + 1;
+            position++;
+        }
+    }
+
+    private void parseJson(int from, int to) throws IOException {
+        int i = skipSpace(from, to);
+        if (i >= to || buf[i] != '{') {
+            throw malformed("expected a JSON object");
+        }
+        i = skipSpace(i + 1, to);
+        if (i < to && buf[i] == '}') {
+            return;
+        }
+        while (true) {
+            if (i >= to || buf[i] != '"') {
+                throw malformed("expected a key");
+            }
+            int keyStart = i + 1;
+            int keyEnd = keyStart;
+            while (keyEnd < to && buf[keyEnd] != '"') {
+                keyEnd++;
+            }
+            int column = dataset.indexOf(buf, keyStart, keyEnd);
+            i = skipSpace(keyEnd + 1, to);
+            if (i >= to || buf[i] != ':') {
+                throw malformed("expected ':'");
+            }
+            i = skipSpace(i + 1, to);
+            if (i >= to) {
+                throw malformed("missing value");
+            }
+
+            int valueStart;
+            int valueEnd;
+            byte kind = RAW;
+            byte b = buf[i];
+            if (b == '"') {
+                valueStart = i + 1;
+                int j = valueStart;
+                while (j < to && buf[j] != '"') {
+                    if (buf[j] == '\\') {
+                        kind = ESCAPED;
+                        j++;
+                    }
+                    j++;
+                }
+                if (j >= to) {
+                    throw malformed("unterminated string");
+                }
+                valueEnd = j;
+                i = j + 1;
+            } else if (b == '{' || b == '[') {
+                throw malformed("nested values are not supported");
+            } else {
+                valueStart = i;
+                while (i < to && buf[i] != ',' && buf[i] != '}' && buf[i] != ' ' && buf[i] != '\t') {
+                    i++;
+                }
+                valueEnd = i;
+                if (valueEnd - valueStart == 4 && buf[valueStart] == 'n') {
+                    kind = ABSENT;
+                }
+            }
+            if (column >= 0) {
+                fieldStart[column] = valueStart;
+                fieldEnd[column] = valueEnd;
+                fieldKind[column] = kind;
+            }
+
+            i = skipSpace(i, to);
+            if (i < to && buf[i] == ',') {
+                i = skipSpace(i + 1, to);
+            } else if (i < to && buf[i] == '}') {
+                return;
+            } else {
+                throw malformed("expected ',' or '}'");
+            }
+        }
+    }
+
+    private int skipSpace(int i, int to) {
+        while (i < to && (buf[i] == ' ' || buf[i] == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * True if the field is present and not empty or null
+     */
+    boolean has(int column) {
+        if (fieldKind[column] == ABSENT) {
+            return false;
+        }
+        int from = trimStart(column);
+        return from < trimEnd(column, from);
+    }
+
+    private int trimStart(int column) {
+        int i = fieldStart[column];
+        while (i < fieldEnd[column] && buf[i] == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private int trimEnd(int column, int from) {
+        int i = fieldEnd[column];
+        while (i > from && buf[i - 1] == ' ') {
+            i--;
+        }
+        return i;
+    }
+
+    long getLong(int column, long defaultValue) throws IOException {
+        if (!has(column)) {
+            return defaultValue;
+        }
+        int i = trimStart(column);
+        int end = trimEnd(column, i);
+        boolean negative = buf[i] == '-';
+        if (negative || buf[i] == '+') {
+            i++;
+        }
+        if (i == end || end - i > 18) {
+            throw malformed("invalid integer in " + dataset.column(column));
+        }
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("invalid integer in " + dataset.column(column));
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    int getInt(int column, int defaultValue) throws IOException {
+        long value = getLong(column, defaultValue);
+        if (value != (int) value) {
+            throw malformed(dataset.column(column) + " is out of range");
+        }
+        return (int) value;
+    }
+
+    /**
+     * Parses a decimal in place. Plain decimals of up to 15 significant
+     * digits, which covers every stored weight, are computed exactly as
+     * mantissa / 10^n; anything else goes through Double.parseDouble.
+     */
+    double getDouble(int column, double defaultValue) throws IOException {
+        if (!has(column)) {
+            return defaultValue;
+        }
+        int from = trimStart(column);
+        int end = trimEnd(column, from);
+        int i = from;
+        boolean negative = buf[i] == '-';
+        if (negative || buf[i] == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (point) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && !point) {
+                point = true;
+            } else {
+                break;
+            }
+        }
+        if (i == end && digits > 0 && digits <= 15) {
+            double value = mantissa / POW10[fractionDigits];
+            return negative ? -value : value;
+        }
+        try {
+            return Double.parseDouble(new String(buf, from, end - from, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException e) {
+            throw malformed("invalid number in " + dataset.column(column));
+        }
+    }
+
+    /**
+     * Parses a yyyy-MM-dd field
+     */
+    long getEpochDay(int column) throws IOException {
+        if (!has(column)) {
+            throw malformed("missing " + dataset.column(column));
+        }
+        int from = trimStart(column);
+        long epochDay = trimEnd(column, from) - from == DateUtils.DB_DATE_LENGTH
+            ? DateUtils.parseEpochDay(buf, from) : DateUtils.INVALID_EPOCH_DAY;
+        if (epochDay == DateUtils.INVALID_EPOCH_DAY) {
+            throw malformed("invalid date in " + dataset.column(column));
+        }
+        return epochDay;
+    }
+
+    /**
+     * Decodes a text field, or returns null if it is absent or empty
+     */
+    String getString(int column) throws IOException {
+        byte kind = fieldKind[column];
+        int from = fieldStart[column];
+        int to = fieldEnd[column];
+        if (kind == ABSENT || from == to) {
+            return null;
+        }
+        String value = new String(buf, from, to - from, StandardCharsets.UTF_8);
+        if (kind == QUOTED) {
+            return value.replace("\"\"", "\"");
+        }
+        if (kind == ESCAPED) {
+            return unescapeJson(value);
+        }
+        return value;
+    }
+
+    private String unescapeJson(String value) throws IOException {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (++i >= value.length()) {
+                throw malformed("bad escape");
+            }
+            char e = value.charAt(i);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (i + 4 >= value.length()) {
+                        throw malformed("bad escape");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                    } catch (NumberFormatException ex) {
+                        throw malformed("bad escape");
+                    }
+                    i += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+        return sb.toString();
+    }
+
+    IOException malformed(String message) {
+        return new IOException("Record " + recordNumber + ": " + message);
+    }
+}
@@ -0,0 +1,68 @@
+package weightcalc.model;
+
+import weightcalc.util.Constants;
+
+/**
+ * Activity level with its TDEE multiplier. The code is what gets stored in
+ * the database and must never change for an existing constant.
+ */
+public enum ActivityLevel {
+    SEDENTARY(0, "Sedentary", Constants.SEDENTARY_MULTIPLIER),
+    LIGHT_ACTIVITY(1, "Light Activity", Constants.LIGHT_ACTIVITY_MULTIPLIER),
+    MODERATE_ACTIVITY(2, "Moderate Activity", Constants.MODERATE_ACTIVITY_MULTIPLIER),
+    VERY_ACTIVE(3, "Very Active", Constants.VERY_ACTIVE_MULTIPLIER);
+
+    private static final ActivityLevel[] BY_CODE = values();
+    private static final double[] MULTIPLIERS = new double[BY_CODE.length];
+
+    static {
+        for (ActivityLevel level : BY_CODE) {
+            MULTIPLIERS[level.code] = level.multiplier;
+        }
+    }
+
+    private final int code;
+    private final String label;
+    private final double multiplier;
+
+    ActivityLevel(int code, String label, double multiplier) {
+        this.code = code;
+        this.label = label;
+        this.multiplier = multiplier;
+    }
+
+    public int getCode() { return code; }
+    public String getLabel() { return label; }
+    public double getMultiplier() { return multiplier; }
+
+    /**
+     * TDEE multiplier looked up by stored code, for column-oriented batch paths
+     */
+    public static double multiplier(int code) {
+        return MULTIPLIERS[code];
+    }
+
+    public static ActivityLevel fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown activity level code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Parses a label such as "Light Activity", returning null if unknown
+     */
+    public static ActivityLevel fromLabel(String label) {
+        for (ActivityLevel level : BY_CODE) {
+            if (level.label.equalsIgnoreCase(label) || level.name().equalsIgnoreCase(label)) {
+                return level;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
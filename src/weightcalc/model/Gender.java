@@ -0,0 +1,66 @@
+package weightcalc.model;
+
+import weightcalc.util.Constants;
+
+/**
+ * Sex used by the Mifflin-St Jeor equation. The code is what gets stored in
+ * the database and must never change for an existing constant.
+ */
+public enum Gender {
+    MALE(0, "Male", Constants.BMR_OFFSET_MALE),
+    FEMALE(1, "Female", Constants.BMR_OFFSET_FEMALE);
+
+    private static final Gender[] BY_CODE = values();
+    private static final double[] BMR_OFFSETS = new double[BY_CODE.length];
+
+    static {
+        for (Gender gender : BY_CODE) {
+            BMR_OFFSETS[gender.code] = gender.bmrOffset;
+        }
+    }
+
+    private final int code;
+    private final String label;
+    private final double bmrOffset;
+
+    Gender(int code, String label, double bmrOffset) {
+        this.code = code;
+        this.label = label;
+        this.bmrOffset = bmrOffset;
+    }
+
+    public int getCode() { return code; }
+    public String getLabel() { return label; }
+    public double getBmrOffset() { return bmrOffset; }
+
+    /**
+     * BMR offset looked up by stored code, for column-oriented batch paths
+     */
+    public static double bmrOffset(int code) {
+        return BMR_OFFSETS[code];
+    }
+
+    public static Gender fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown gender code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    /**
+     * Parses a label such as "Male" or "female", returning null if unknown
+     */
+    public static Gender fromLabel(String label) {
+        for (Gender gender : BY_CODE) {
+            if (gender.label.equalsIgnoreCase(label) || gender.name().equalsIgnoreCase(label)) {
+                return gender;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
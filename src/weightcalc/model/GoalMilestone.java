@@ -0,0 +1,43 @@
+package weightcalc.model;
+
+import java.time.LocalDate;
+
+/**
+ * One checkpoint weight of a {@link WeightGoal}, numbered from 0 in the order
+ * it is reached. The reached date is null until a log crosses it.
+ */
+public class GoalMilestone {
+    private final WeightGoal goal;
+    private final int index;
+    private final double weight;
+    private LocalDate reachedDate;
+
+    GoalMilestone(WeightGoal goal, int index, double weight) {
+        this.goal = goal;
+        this.index = index;
+        this.weight = weight;
+    }
+
+    public WeightGoal getGoal() { return goal; }
+    public int getIndex() { return index; }
+    public double getWeight() { return weight; }
+
+    public LocalDate getReachedDate() { return reachedDate; }
+    public void setReachedDate(LocalDate date) { this.reachedDate = date; }
+
+    public boolean isReached() {
+        return reachedDate != null;
+    }
+
+    /**
+     * True for the goal's final milestone, the target weight
+     */
+    public boolean isTarget() {
+        return index == goal.getMilestones().size() - 1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.1f kg", weight);
+    }
+}
@@ -0,0 +1,66 @@
+package weightcalc.model;
+
+import java.time.LocalDate;
+import weightcalc.util.DateUtils;
+
+/**
+ * Length of the periods weight logs are pre-aggregated over. Weeks start on
+ * Monday. The code is what gets stored in the database and must never
+ * change for an existing constant.
+ */
+public enum RollupPeriod {
+    WEEK(0, "Week"),
+    MONTH(1, "Month");
+
+    private static final RollupPeriod[] BY_CODE = values();
+
+    private final int code;
+    private final String label;
+
+    RollupPeriod(int code, String label) {
+        this.code = code;
+        this.label = label;
+    }
+
+    public int getCode() { return code; }
+    public String getLabel() { return label; }
+
+    /**
+     * First day of the period containing the given date
+     */
+    public LocalDate startOf(LocalDate date) {
+        return this == WEEK ? DateUtils.getStartOfWeek(date) : date.withDayOfMonth(1);
+    }
+
+    /**
+     * Last day of the period containing the given date
+     */
+    public LocalDate endOf(LocalDate date) {
+        return this == WEEK ? DateUtils.getEndOfWeek(date)
+            : date.withDayOfMonth(date.lengthOfMonth());
+    }
+
+    /**
+     * Epoch day of the first day of the period containing the given epoch
+     * day, without creating a LocalDate for weeks
+     */
+    public long startOf(long epochDay) {
+        if (this == WEEK) {
+            // 1970-01-01 was a Thursday, three days after a Monday
+            return epochDay - Math.floorMod(epochDay + 3, 7);
+        }
+        return LocalDate.ofEpochDay(epochDay).withDayOfMonth(1).toEpochDay();
+    }
+
+    public static RollupPeriod fromCode(int code) {
+        if (code < 0 || code >= BY_CODE.length) {
+            throw new IllegalArgumentException("Unknown rollup period code: " + code);
+        }
+        return BY_CODE[code];
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
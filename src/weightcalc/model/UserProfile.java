@@ -8,13 +8,13 @@ public class UserProfile {
     private double currentWeight;
     private double targetWeight;
     private int age;
-    private String gender;
-    private String activityLevel;
+    private Gender gender;
+    private ActivityLevel activityLevel;
     private LocalDate startDate;
     private LocalDate targetDate;
 
     public UserProfile(double height, double currentWeight, double targetWeight, 
-                      int age, String gender, String activityLevel) {
+                      int age, Gender gender, ActivityLevel activityLevel) {
         this.height = height;
         this.currentWeight = currentWeight;
         this.targetWeight = targetWeight;
@@ -24,6 +24,18 @@ public class UserProfile {
         this.startDate = LocalDate.now();
     }
 
+    /**
+     * Returns an independent copy with the same id and field values
+     */
+    public static UserProfile copyOf(UserProfile profile) {
+        UserProfile copy = new UserProfile(profile.height, profile.currentWeight,
+            profile.targetWeight, profile.age, profile.gender, profile.activityLevel);
+        copy.id = profile.id;
+        copy.startDate = profile.startDate;
+        copy.targetDate = profile.targetDate;
+        return copy;
+    }
+
     // Getters and setters
     public int getId() { return id; }
     public void setId(int id) { this.id = id; }
@@ -40,11 +52,11 @@ public class UserProfile {
     public int getAge() { return age; }
     public void setAge(int age) { this.age = age; }
     
-    public String getGender() { return gender; }
-    public void setGender(String gender) { this.gender = gender; }
+    public Gender getGender() { return gender; }
+    public void setGender(Gender gender) { this.gender = gender; }
     
-    public String getActivityLevel() { return activityLevel; }
-    public void setActivityLevel(String level) { this.activityLevel = level; }
+    public ActivityLevel getActivityLevel() { return activityLevel; }
+    public void setActivityLevel(ActivityLevel level) { this.activityLevel = level; }
     
     public LocalDate getStartDate() { return startDate; }
     public void setStartDate(LocalDate date) { this.startDate = date; }
@@ -1,5 +1,137 @@
 package weightcalc.model;
 
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A user's weight target with a deadline, a planned weekly rate and a
+ * series of milestones on the way. The last milestone is always the target
+ * itself; reaching it achieves the goal. Goals may aim to lose or to gain.
+ */
 public class WeightGoal {
-    
+    private int id;
+    private int userId;
+    private double startWeight;
+    private double targetWeight;
+    private LocalDate startDate;
+    private LocalDate deadline;
+    private double weeklyRate;
+    private boolean active = true;
+    private LocalDate achievedDate;
+    private final List<GoalMilestone> milestones = new ArrayList<>();
+
+    /**
+     * @param deadline may be null for an open-ended goal
+     * @param weeklyRate planned change in kg per week, as a positive number
+     */
+    public WeightGoal(int userId, double startWeight, double targetWeight, LocalDate startDate,
+            LocalDate deadline, double weeklyRate) {
+        if (startWeight == targetWeight) {
+            throw new IllegalArgumentException("Target weight must differ from the start weight");
+        }
+        this.userId = userId;
+        this.startWeight = startWeight;
+        this.targetWeight = targetWeight;
+        this.startDate = startDate;
+        this.deadline = deadline;
+        this.weeklyRate = weeklyRate;
+        milestones.add(new GoalMilestone(this, 0, targetWeight));
+    }
+
+    // Getters and setters
+    public int getId() { return id; }
+    public void setId(int id) { this.id = id; }
+
+    public int getUserId() { return userId; }
+    public double getStartWeight() { return startWeight; }
+    public double getTargetWeight() { return targetWeight; }
+    public LocalDate getStartDate() { return startDate; }
+    public LocalDate getDeadline() { return deadline; }
+
+    public double getWeeklyRate() { return weeklyRate; }
+    public void setWeeklyRate(double rate) { this.weeklyRate = rate; }
+
+    public boolean isActive() { return active; }
+    public void setActive(boolean active) { this.active = active; }
+
+    public LocalDate getAchievedDate() { return achievedDate; }
+    public void setAchievedDate(LocalDate date) { this.achievedDate = date; }
+
+    public boolean isLoss() {
+        return targetWeight < startWeight;
+    }
+
+    /**
+     * Milestones in the order they are reached, ending with the target
+     */
+    public List<GoalMilestone> getMilestones() {
+        return Collections.unmodifiableList(milestones);
+    }
+
+    /**
+     * Replaces the milestones with the given intermediate weights, which
+     * must lie strictly between the start and target weight in the order
+     * they will be reached. The target is appended as the final milestone.
+     */
+    public void setMilestones(double... weights) {
+        double previous = startWeight;
+        for (double weight : weights) {
+            boolean inOrder = isLoss() ? weight < previous : weight > previous;
+            boolean beforeTarget = isLoss() ? weight > targetWeight : weight < targetWeight;
+            if (!inOrder || !beforeTarget) {
+                throw new IllegalArgumentException("Milestone " + weight 
+                    + " is not between the previous milestone and the target");
+            }
+            previous = weight;
+        }
+        milestones.clear();
+        for (double weight : weights) {
+            milestones.add(new GoalMilestone(this, milestones.size(), weight));
+        }
+        milestones.add(new GoalMilestone(this, milestones.size(), targetWeight));
+    }
+
+    /**
+     * Splits the way from start to target into the given number of equal
+     * steps, each ending in a milestone
+     */
+    public void setEvenMilestones(int steps) {
+        if (steps < 1) {
+            throw new IllegalArgumentException("steps must be at least 1");
+        }
+        double[] weights = new double[steps - 1];
+        double step = (targetWeight - startWeight) / steps;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = startWeight + step * (i + 1);
+        }
+        setMilestones(weights);
+    }
+
+    /**
+     * Used when loading from the database, where milestones arrive in order
+     * and may already have been reached
+     */
+    public void restoreMilestones(double[] weights, LocalDate[] reachedDates) {
+        milestones.clear();
+        for (int i = 0; i < weights.length; i++) {
+            GoalMilestone milestone = new GoalMilestone(this, i, weights[i]);
+            milestone.setReachedDate(reachedDates[i]);
+            milestones.add(milestone);
+        }
+    }
+
+    /**
+     * Weekly rate needed to get from start to target by the deadline, or
+     * NaN for an open-ended goal
+     */
+    public double getRequiredWeeklyRate() {
+        if (deadline == null) {
+            return Double.NaN;
+        }
+        long days = Math.max(1, ChronoUnit.DAYS.between(startDate, deadline));
+        return Math.abs(targetWeight - startWeight) * 7 / days;
+    }
 }
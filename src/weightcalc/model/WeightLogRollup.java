@@ -0,0 +1,60 @@
+package weightcalc.model;
+
+import java.time.LocalDate;
+
+/**
+ * Aggregate of one user's weight logs over a week or a month, as kept in
+ * the rollup table. Read-only.
+ */
+public class WeightLogRollup {
+    private final int userId;
+    private final RollupPeriod period;
+    private final LocalDate periodStart;
+    private final int logCount;
+    private final double minWeight;
+    private final double maxWeight;
+    private final double weightSum;
+    private final long caloriesConsumed;
+    private final long caloriesBurned;
+    private final long exerciseMinutes;
+
+    public WeightLogRollup(int userId, RollupPeriod period, LocalDate periodStart, int logCount,
+            double minWeight, double maxWeight, double weightSum, long caloriesConsumed,
+            long caloriesBurned, long exerciseMinutes) {
+        this.userId = userId;
+        this.period = period;
+        this.periodStart = periodStart;
+        this.logCount = logCount;
+        this.minWeight = minWeight;
+        this.maxWeight = maxWeight;
+        this.weightSum = weightSum;
+        this.caloriesConsumed = caloriesConsumed;
+        this.caloriesBurned = caloriesBurned;
+        this.exerciseMinutes = exerciseMinutes;
+    }
+
+    public int getUserId() { return userId; }
+    public RollupPeriod getPeriod() { return period; }
+    public LocalDate getPeriodStart() { return periodStart; }
+    public LocalDate getPeriodEnd() { return period.endOf(periodStart); }
+    public int getLogCount() { return logCount; }
+    public double getMinWeight() { return minWeight; }
+    public double getMaxWeight() { return maxWeight; }
+    public double getAverageWeight() { return weightSum / logCount; }
+    public long getCaloriesConsumed() { return caloriesConsumed; }
+    public long getCaloriesBurned() { return caloriesBurned; }
+    public long getExerciseMinutes() { return exerciseMinutes; }
+
+    /**
+     * Calories consumed minus calories burned over the period
+     */
+    public long getCalorieBalance() {
+        return caloriesConsumed - caloriesBurned;
+    }
+
+    @Override
+    public String toString() {
+        return period + " of " + periodStart + ": " + logCount + " logs, avg " 
+            + String.format("%.1f", getAverageWeight()) + " kg";
+    }
+}
@@ -0,0 +1,205 @@
+package weightcalc.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Column-oriented, read-only view of one user's weight logs in date order.
+ * Each field lives in its own primitive array, so scans over long histories
+ * touch contiguous memory and allocate nothing per row. Slices share the
+ * parent's arrays.
+ */
+public class WeightLogSeries {
+    private final int userId;
+    private final int[] epochDays;
+    private final double[] weights;
+    private final int[] caloriesConsumed;
+    private final int[] caloriesBurned;
+    private final int[] exerciseMinutes;
+    private final int offset;
+    private final int length;
+
+    private WeightLogSeries(int userId, int[] epochDays, double[] weights, int[] caloriesConsumed,
+            int[] caloriesBurned, int[] exerciseMinutes, int offset, int length) {
+        this.userId = userId;
+        this.epochDays = epochDays;
+        this.weights = weights;
+        this.caloriesConsumed = caloriesConsumed;
+        this.caloriesBurned = caloriesBurned;
+        this.exerciseMinutes = exerciseMinutes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public int getUserId() { return userId; }
+    public int size() { return length; }
+    public boolean isEmpty() { return length == 0; }
+
+    // Row accessors; index is relative to this view
+    public int epochDay(int index) { return epochDays[offset + checkIndex(index)]; }
+    public LocalDate date(int index) { return LocalDate.ofEpochDay(epochDay(index)); }
+    public double weight(int index) { return weights[offset + checkIndex(index)]; }
+    public int caloriesConsumed(int index) { return caloriesConsumed[offset + checkIndex(index)]; }
+    public int caloriesBurned(int index) { return caloriesBurned[offset + checkIndex(index)]; }
+    public int exerciseMinutes(int index) { return exerciseMinutes[offset + checkIndex(index)]; }
+
+    /**
+     * Returns a view of rows [fromIndex, toIndex) sharing this series' arrays
+     */
+    public WeightLogSeries slice(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("slice [" + fromIndex + ", " + toIndex 
+                + ") of series with " + length + " rows");
+        }
+        return new WeightLogSeries(userId, epochDays, weights, caloriesConsumed, caloriesBurned,
+            exerciseMinutes, offset + fromIndex, toIndex - fromIndex);
+    }
+
+    /**
+     * Returns a view of the rows dated within [startDate, endDate], found by
+     * binary search without copying
+     */
+    public WeightLogSeries slice(LocalDate startDate, LocalDate endDate) {
+        int from = lowerBound(startDate.toEpochDay());
+        int to = lowerBound(endDate.toEpochDay() + 1);
+        return slice(from, Math.max(from, to));
+    }
+
+    // First index (relative to this view) whose epoch day is >= day
+    private int lowerBound(long day) {
+        int low = offset;
+        int high = offset + length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (epochDays[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - offset;
+    }
+
+    public double minWeight() {
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double min = weights[offset];
+        for (int i = offset + 1, end = offset + length; i < end; i++) {
+            if (weights[i] < min) {
+                min = weights[i];
+            }
+        }
+        return min;
+    }
+
+    public double maxWeight() {
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double max = weights[offset];
+        for (int i = offset + 1, end = offset + length; i < end; i++) {
+            if (weights[i] > max) {
+                max = weights[i];
+            }
+        }
+        return max;
+    }
+
+    public double averageWeight() {
+        if (length == 0) {
+            return Double.NaN;
+        }
+        double sum = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            sum += weights[i];
+        }
+        return sum / length;
+    }
+
+    public long totalCaloriesConsumed() { return sum(caloriesConsumed); }
+    public long totalCaloriesBurned() { return sum(caloriesBurned); }
+    public long totalExerciseMinutes() { return sum(exerciseMinutes); }
+
+    private long sum(int[] column) {
+        long sum = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            sum += column[i];
+        }
+        return sum;
+    }
+
+    private int checkIndex(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + length);
+        }
+        return index;
+    }
+
+    /**
+     * Accumulates rows in date order into growable column arrays
+     */
+    public static class Builder {
+        private final int userId;
+        private int[] epochDays;
+        private double[] weights;
+        private int[] caloriesConsumed;
+        private int[] caloriesBurned;
+        private int[] exerciseMinutes;
+        private int size;
+
+        public Builder(int userId) {
+            this(userId, 64);
+        }
+
+        public Builder(int userId, int initialCapacity) {
+            int capacity = Math.max(1, initialCapacity);
+            this.userId = userId;
+            this.epochDays = new int[capacity];
+            this.weights = new double[capacity];
+            this.caloriesConsumed = new int[capacity];
+            this.caloriesBurned = new int[capacity];
+            this.exerciseMinutes = new int[capacity];
+        }
+
+        public Builder add(int epochDay, double weight, int consumed, int burned, int minutes) {
+            if (size > 0 && epochDay < epochDays[size - 1]) {
+                throw new IllegalArgumentException("Rows must be added in date order");
+            }
+            if (size == epochDays.length) {
+                int capacity = size * 2;
+                epochDays = Arrays.copyOf(epochDays, capacity);
+                weights = Arrays.copyOf(weights, capacity);
+                caloriesConsumed = Arrays.copyOf(caloriesConsumed, capacity);
+                caloriesBurned = Arrays.copyOf(caloriesBurned, capacity);
+                exerciseMinutes = Arrays.copyOf(exerciseMinutes, capacity);
+            }
+            epochDays[size] = epochDay;
+            weights[size] = weight;
+            caloriesConsumed[size] = consumed;
+            caloriesBurned[size] = burned;
+            exerciseMinutes[size] = minutes;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Builds the series over the builder's arrays; the builder must not
+         * be used afterwards
+         */
+        public WeightLogSeries build() {
+            WeightLogSeries series = new WeightLogSeries(userId, epochDays, weights,
+                caloriesConsumed, caloriesBurned, exerciseMinutes, 0, size);
+            epochDays = null;
+            weights = null;
+            caloriesConsumed = null;
+            caloriesBurned = null;
+            exerciseMinutes = null;
+            return series;
+        }
+    }
+}
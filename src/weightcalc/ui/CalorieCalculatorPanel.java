@@ -2,14 +2,15 @@ package weightcalc.ui;
 
 import javax.swing.*;
 import java.awt.*;
+import weightcalc.calc.EnergyCalculator;
+import weightcalc.model.ActivityLevel;
 import weightcalc.model.UserProfile;
-import weightcalc.util.Constants;
 
 public class CalorieCalculatorPanel extends JPanel {
     private JTextField bmrField;
     private JTextField tdeeField;
     private JTextField dailyCaloriesField;
-    private JComboBox<String> activityLevelCombo;
+    private JComboBox<ActivityLevel> activityLevelCombo;
     private UserProfile currentProfile;  // Added this field
 
     public CalorieCalculatorPanel() {
@@ -32,9 +33,7 @@ public class CalorieCalculatorPanel extends JPanel {
 
         // Activity Level
         addLabel("Activity Level:", mainPanel, gbc, 0, 1);
-        activityLevelCombo = new JComboBox<>(new String[]{
-            "Sedentary", "Light Activity", "Moderate Activity", "Very Active"
-        });
+        activityLevelCombo = new JComboBox<>(ActivityLevel.values());
         addComponent(activityLevelCombo, mainPanel, gbc, 1, 1);
 
         // TDEE
@@ -92,43 +91,17 @@ public class CalorieCalculatorPanel extends JPanel {
             return;
         }
 
-        double bmr = calculateBMR();
-        double tdee = calculateTDEE(bmr);
-        double dailyTarget = calculateDailyTarget(tdee);
+        double bmr = EnergyCalculator.bmr(
+            currentProfile.getCurrentWeight(),
+            currentProfile.getHeight(),
+            currentProfile.getAge(),
+            currentProfile.getGender());
+        double tdee = EnergyCalculator.tdee(bmr, 
+            (ActivityLevel) activityLevelCombo.getSelectedItem());
+        double dailyTarget = EnergyCalculator.dailyTarget(tdee);
 
         bmrField.setText(String.format("%.0f", bmr));
         tdeeField.setText(String.format("%.0f", tdee));
         dailyCaloriesField.setText(String.format("%.0f", dailyTarget));
     }
-
-    private double calculateBMR() {
-        // Mifflin-St Jeor Equation
-        double bmr;
-        if (currentProfile.getGender().equalsIgnoreCase("male")) {
-            bmr = (10 * currentProfile.getCurrentWeight()) + 
-                  (6.25 * currentProfile.getHeight()) - 
-                  (5 * currentProfile.getAge()) + 5;
-        } else {
-            bmr = (10 * currentProfile.getCurrentWeight()) + 
-                  (6.25 * currentProfile.getHeight()) - 
-                  (5 * currentProfile.getAge()) - 161;
-        }
-        return bmr;
-    }
-
-    private double calculateTDEE(double bmr) {
-        String activity = (String) activityLevelCombo.getSelectedItem();
-        switch (activity) {
-            case "Sedentary": return bmr * Constants.SEDENTARY_MULTIPLIER;
-            case "Light Activity": return bmr * Constants.LIGHT_ACTIVITY_MULTIPLIER;
-            case "Moderate Activity": return bmr * Constants.MODERATE_ACTIVITY_MULTIPLIER;
-            case "Very Active": return bmr * Constants.VERY_ACTIVE_MULTIPLIER;
-            default: return bmr * Constants.SEDENTARY_MULTIPLIER;
-        }
-    }
-
-    private double calculateDailyTarget(double tdee) {
-        // Create a 500 calorie deficit for healthy weight loss
-        return tdee - 500;
-    }
 }
\ No newline at end of file
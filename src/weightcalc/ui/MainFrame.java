@@ -10,6 +10,8 @@ public class MainFrame extends JFrame {
     private CalorieCalculatorPanel calorieCalculatorPanel;
 
     public MainFrame() {
+        // Open the database in the background while the window is built
+        SwingDatabase.start();
         setTitle("Weight Loss Tracker");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(1000, 600);
@@ -0,0 +1,53 @@
+package weightcalc.ui;
+
+import java.sql.SQLException;
+import javax.swing.SwingUtilities;
+import weightcalc.db.AsyncDatabaseHandler;
+import weightcalc.db.WeightRepositories;
+import weightcalc.db.WeightRepository;
+
+/**
+ * Shared asynchronous database access for the panels. Queries run off the
+ * event dispatch thread and their futures complete back on it. The storage
+ * engine is the one selected by {@link WeightRepositories#open()}.
+ */
+final class SwingDatabase {
+
+    // Opening (migrations, backfill setup) runs on the worker, never the EDT
+    private static class Holder {
+        private static final AsyncDatabaseHandler INSTANCE =
+            AsyncDatabaseHandler.open(SwingDatabase::openRepository, SwingUtilities::invokeLater);
+    }
+
+    static AsyncDatabaseHandler get() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Starts opening the database in the background; later calls to
+     * {@link #get()} queue behind it
+     */
+    static void start() {
+        get();
+    }
+
+    private static WeightRepository openRepository() throws SQLException {
+        WeightRepository repository = WeightRepositories.open();
+        // Snapshot and mapped engines flush on close
+        Runtime.getRuntime().addShutdownHook(new Thread(repository::close, "db-shutdown"));
+        return repository;
+    }
+
+    /**
+     * Unwraps the CompletionException a failed future hands to its callbacks
+     */
+    static String errorMessage(Throwable error) {
+        Throwable cause = error instanceof java.util.concurrent.CompletionException 
+            && error.getCause() != null ? error.getCause() : error;
+        return cause.getMessage();
+    }
+
+    private SwingDatabase() {
+        // Private constructor to prevent instantiation
+    }
+}
@@ -2,8 +2,10 @@ package weightcalc.ui;
 
 import javax.swing.*;
 import java.awt.*;
+import java.util.concurrent.CompletableFuture;
+import weightcalc.model.ActivityLevel;
+import weightcalc.model.Gender;
 import weightcalc.model.UserProfile;
-import weightcalc.db.DatabaseHandler;
 import weightcalc.util.Constants;
 
 public class UserProfilePanel extends JPanel {
@@ -11,8 +13,8 @@ public class UserProfilePanel extends JPanel {
    private JTextField weightField;
    private JTextField targetWeightField;
    private JTextField ageField;
-   private JComboBox<String> genderCombo;
-   private JComboBox<String> activityLevelCombo;
+   private JComboBox<Gender> genderCombo;
+   private JComboBox<ActivityLevel> activityLevelCombo;
    private JButton saveButton;
    private UserProfile currentProfile;
 
@@ -49,17 +51,12 @@ public class UserProfilePanel extends JPanel {
 
        // Gender
        addLabel("Gender:", gbc, 2, 1);
-       genderCombo = new JComboBox<>(new String[]{"Male", "Female"});
+       genderCombo = new JComboBox<>(Gender.values());
        addComponent(genderCombo, gbc, 3, 1);
 
        // Activity Level
        addLabel("Activity Level:", gbc, 2, 2);
-       activityLevelCombo = new JComboBox<>(new String[]{
-           "Sedentary",
-           "Light Activity", 
-           "Moderate Activity",
-           "Very Active"
-       });
+       activityLevelCombo = new JComboBox<>(ActivityLevel.values());
        addComponent(activityLevelCombo, gbc, 3, 2);
 
        // Save Button
@@ -122,32 +119,38 @@ public class UserProfilePanel extends JPanel {
            return;
        }
 
-       try {
-           UserProfile profile = new UserProfile(
-               Double.parseDouble(heightField.getText()),
-               Double.parseDouble(weightField.getText()),
-               Double.parseDouble(targetWeightField.getText()),
-               Integer.parseInt(ageField.getText()),
-               (String) genderCombo.getSelectedItem(),
-               (String) activityLevelCombo.getSelectedItem()
-           );
-
-           if (currentProfile != null && currentProfile.getId() > 0) {
-               profile.setId(currentProfile.getId());
-               DatabaseHandler.getInstance().updateUserProfile(profile);
-           } else {
-               DatabaseHandler.getInstance().saveUserProfile(profile);
+       UserProfile profile = new UserProfile(
+           Double.parseDouble(heightField.getText()),
+           Double.parseDouble(weightField.getText()),
+           Double.parseDouble(targetWeightField.getText()),
+           Integer.parseInt(ageField.getText()),
+           (Gender) genderCombo.getSelectedItem(),
+           (ActivityLevel) activityLevelCombo.getSelectedItem()
+       );
+
+       CompletableFuture<UserProfile> saved;
+       if (currentProfile != null && currentProfile.getId() > 0) {
+           profile.setId(currentProfile.getId());
+           saved = SwingDatabase.get().updateUserProfile(profile);
+       } else {
+           saved = SwingDatabase.get().saveUserProfile(profile);
+       }
+
+       // The save runs off the EDT; this callback runs back on it
+       saveButton.setEnabled(false);
+       saved.whenComplete((result, error) -> {
+           saveButton.setEnabled(true);
+           if (error != null) {
+               showError("Error saving profile: " + SwingDatabase.errorMessage(error));
+               return;
            }
 
-           currentProfile = profile;
+           currentProfile = result;
            showMessage("Profile saved successfully!");
            
            // Notify other panels
-           firePropertyChange("userProfileSaved", null, profile);
-
-       } catch (Exception e) {
-           showError("Error saving profile: " + e.getMessage());
-       }
+           firePropertyChange("userProfileSaved", null, result);
+       });
    }
 
    public void loadProfile(UserProfile profile) {
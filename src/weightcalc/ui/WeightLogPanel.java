@@ -6,7 +6,8 @@ import java.awt.*;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import weightcalc.model.*;
-import weightcalc.db.DatabaseHandler;
+import weightcalc.util.Constants;
+import weightcalc.util.DateUtils;
 
 public class WeightLogPanel extends JPanel {
     private UserProfile currentUser;
@@ -16,8 +17,11 @@ public class WeightLogPanel extends JPanel {
     private JSpinner exerciseMinutesSpinner;
     private JTextArea noteArea;
     private JButton logButton;
+    private JTextField fromDateField;
+    private JTextField toDateField;
+    private JButton showRangeButton;
     private JTable logsTable;
-    private DefaultTableModel tableModel;
+    private WeightLogTableModel tableModel;
     private final DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy-MM-dd");
 
     public WeightLogPanel() {
@@ -68,12 +72,25 @@ public class WeightLogPanel extends JPanel {
         gbc.anchor = GridBagConstraints.CENTER;
         inputPanel.add(logButton, gbc);
 
+        // Date range shown in the table, defaulting to the last month
+        JPanel rangePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        LocalDate today = LocalDate.now();
+        fromDateField = new JTextField(DateUtils.formatForDisplay(today.minusMonths(1)), 8);
+        toDateField = new JTextField(DateUtils.formatForDisplay(today), 8);
+        showRangeButton = new JButton("Show");
+        rangePanel.add(new JLabel("From (" + Constants.DATE_FORMAT_DISPLAY + "):"));
+        rangePanel.add(fromDateField);
+        rangePanel.add(new JLabel("To:"));
+        rangePanel.add(toDateField);
+        rangePanel.add(showRangeButton);
+
         // Table for displaying logs
         setupLogsTable();
 
         // Panel layout
         JPanel topPanel = new JPanel(new BorderLayout());
         topPanel.add(inputPanel, BorderLayout.NORTH);
+        topPanel.add(rangePanel, BorderLayout.SOUTH);
         
         // Add components to main panel
         add(topPanel, BorderLayout.NORTH);
@@ -81,26 +98,12 @@ public class WeightLogPanel extends JPanel {
 
         // Add listeners
         logButton.addActionListener(e -> logEntry());
+        showRangeButton.addActionListener(e -> loadLogs());
     }
 
     private void setupLogsTable() {
-        String[] columnNames = {"Date", "Weight (kg)", "Calories In", "Calories Out", "Exercise (min)", "Notes"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-            
-            @Override
-            public Class<?> getColumnClass(int column) {
-                switch (column) {
-                    case 0: return LocalDate.class;
-                    case 1: return Double.class;
-                    case 2: case 3: case 4: return Integer.class;
-                    default: return String.class;
-                }
-            }
-        };
+        tableModel = new WeightLogTableModel(message ->
+            JOptionPane.showMessageDialog(this, message, "Error", JOptionPane.ERROR_MESSAGE));
         
         logsTable = new JTable(tableModel);
         logsTable.setFillsViewportHeight(true);
@@ -152,13 +155,14 @@ public class WeightLogPanel extends JPanel {
             return;
         }
 
+        WeightLog log;
         try {
             double weight = Double.parseDouble(weightField.getText());
             int caloriesConsumed = Integer.parseInt(caloriesConsumedField.getText());
             int caloriesBurned = Integer.parseInt(caloriesBurnedField.getText());
             int exerciseMinutes = (Integer) exerciseMinutesSpinner.getValue();
 
-            WeightLog log = new WeightLog(
+            log = new WeightLog(
                 currentUser.getId(),
                 LocalDate.now(),
                 weight,
@@ -167,43 +171,57 @@ public class WeightLogPanel extends JPanel {
                 exerciseMinutes
             );
             log.setNotes(noteArea.getText());
-
-            DatabaseHandler.getInstance().saveWeightLog(log);
-            loadLogs();
-            clearInputs();
-
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, "Please enter valid numbers", 
                 "Input Error", JOptionPane.ERROR_MESSAGE);
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error saving log: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+
+        // The insert runs off the EDT; this callback runs back on it
+        logButton.setEnabled(false);
+        SwingDatabase.get().saveWeightLog(log).whenComplete((saved, error) -> {
+            logButton.setEnabled(true);
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, 
+                    "Error saving log: " + SwingDatabase.errorMessage(error),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            // Only the new row is added, unless the range fields were edited
+            // since the last load or the model cannot place the row itself
+            LocalDate[] range = selectedRange();
+            if (range != null && (!range[0].equals(tableModel.getStartDate())
+                    || !range[1].equals(tableModel.getEndDate()))) {
+                loadLogs();
+            } else if (!tableModel.insertLog(saved)) {
+                tableModel.reload();
+            }
+            clearInputs();
+        });
     }
 
     private void loadLogs() {
         if (currentUser == null) return;
 
-        try {
-            tableModel.setRowCount(0);
-            LocalDate endDate = LocalDate.now();
-            LocalDate startDate = endDate.minusMonths(1);
-            
-            for (WeightLog log : DatabaseHandler.getInstance().getWeightLogs(currentUser.getId(), 
-                    startDate, endDate)) {
-                tableModel.addRow(new Object[]{
-                    log.getDate(),
-                    log.getWeight(),
-                    log.getCaloriesConsumed(),
-                    log.getCaloriesBurned(),
-                    log.getExerciseMinutes(),
-                    log.getNotes()
-                });
-            }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading logs: " + e.getMessage(),
-                "Error", JOptionPane.ERROR_MESSAGE);
+        LocalDate[] range = selectedRange();
+        if (range == null) {
+            JOptionPane.showMessageDialog(this, "Please enter a valid date range ("
+                + Constants.DATE_FORMAT_DISPLAY + ")", "Input Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        tableModel.load(currentUser.getId(), range[0], range[1]);
+    }
+
+    /**
+     * Returns {from, to} from the range fields, or null if they are invalid
+     */
+    private LocalDate[] selectedRange() {
+        LocalDate from = DateUtils.parseDisplayDate(fromDateField.getText().trim());
+        LocalDate to = DateUtils.parseDisplayDate(toDateField.getText().trim());
+        if (from == null || to == null || from.isAfter(to)) {
+            return null;
         }
+        return new LocalDate[]{from, to};
     }
 
     private void clearInputs() {
@@ -0,0 +1,266 @@
+package weightcalc.ui;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import javax.swing.table.AbstractTableModel;
+import weightcalc.db.DatabaseTask;
+import weightcalc.model.WeightLog;
+import weightcalc.util.Constants;
+
+/**
+ * Table model that pages weight logs from the database on demand. A load
+ * only fetches the row count; rows are fetched a page at a time as the table
+ * asks for them, so only pages around the viewport are ever queried. Pages
+ * are kept in a small LRU window. All methods run on the event dispatch
+ * thread; queries run on the async database executor.
+ *
+ * The (date, id) key of each loaded page's last row is kept as a sparse
+ * index of anchors, one every page of rows. A page is fetched by keyset
+ * seek from the nearest anchor before it, so the next page is a plain
+ * seek, and a jump with the scrollbar only steps over the rows since the
+ * closest page already seen rather than every row from the start.
+ */
+public class WeightLogTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMN_NAMES = {
+        "Date", "Weight (kg)", "Calories In", "Calories Out", "Exercise (min)", "Notes"
+    };
+
+    private final int pageSize = Constants.LOG_TABLE_PAGE_SIZE;
+    private final Map<Integer, WeightLog[]> pages =
+        new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, WeightLog[]> eldest) {
+                return size() > Constants.LOG_TABLE_CACHED_PAGES;
+            }
+        };
+    private final Set<Integer> loadingPages = new HashSet<>();
+    // Anchors: last (date, id) key of each loaded page, indexed by page;
+    // an id of 0 means that page's end is not known
+    private long[] pageEndDays = new long[0];
+    private int[] pageEndIds = new int[0];
+    private final Consumer<String> errorHandler;
+
+    private int userId;
+    private LocalDate startDate;
+    private LocalDate endDate;
+    private int rowCount;
+    // Bumped on every load so results for an older range are dropped
+    private int generation;
+    // Bumped whenever row offsets shift, so pages in flight are dropped
+    private int pageGeneration;
+
+    public WeightLogTableModel(Consumer<String> errorHandler) {
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Shows the given user's logs in [startDate, endDate]. Fires a single
+     * table-changed event once the row count is known.
+     */
+    public void load(int userId, LocalDate startDate, LocalDate endDate) {
+        int loadGeneration = ++generation;
+        SwingDatabase.get()
+            .coalesce(this, db -> db.countWeightLogs(userId, startDate, endDate))
+            .whenComplete((count, error) -> {
+                if (loadGeneration != generation) {
+                    return;
+                }
+                if (error != null) {
+                    errorHandler.accept("Error loading logs: " + SwingDatabase.errorMessage(error));
+                    return;
+                }
+                this.userId = userId;
+                this.startDate = startDate;
+                this.endDate = endDate;
+                this.rowCount = count;
+                pages.clear();
+                loadingPages.clear();
+                pageGeneration++;
+                int pageCount = (count + pageSize - 1) / pageSize;
+                pageEndDays = new long[pageCount];
+                pageEndIds = new int[pageCount];
+                fireTableDataChanged();
+            });
+    }
+
+    /**
+     * Loads the current range again, if one has been loaded
+     */
+    public void reload() {
+        if (startDate != null) {
+            load(userId, startDate, endDate);
+        }
+    }
+
+    /**
+     * Adds a freshly saved log in its sorted position with a single
+     * rows-inserted event, without reloading the table. Pages after the
+     * insertion point are dropped and refetched when next shown.
+     * @return false if the log is outside the loaded window, in which case
+     *         the caller should reload instead
+     */
+    public boolean insertLog(WeightLog log) {
+        if (startDate == null || log.getUserId() != userId
+                || log.getDate().isBefore(startDate) || log.getDate().isAfter(endDate)) {
+            return false;
+        }
+        if (log.getDate().equals(endDate)) {
+            // New ids are the largest, so a log on the last day sorts last
+            insertAt(rowCount, log);
+            return true;
+        }
+        int insertGeneration = generation;
+        SwingDatabase.get()
+            .submit(db -> db.countWeightLogs(userId, startDate, log.getDate()))
+            .whenComplete((position, error) -> {
+                if (insertGeneration != generation) {
+                    return;
+                }
+                if (error != null) {
+                    errorHandler.accept("Error loading logs: " + SwingDatabase.errorMessage(error));
+                    return;
+                }
+                // The count already includes the new row
+                insertAt(position - 1, log);
+            });
+        return true;
+    }
+
+    private void insertAt(int row, WeightLog log) {
+        int pageIndex = row / pageSize;
+        pages.keySet().removeIf(index -> index > pageIndex);
+        WeightLog[] page = pages.get(pageIndex);
+        if (page != null) {
+            int index = row % pageSize;
+            int length = Math.min(page.length + 1, pageSize);
+            WeightLog[] updated = new WeightLog[length];
+            System.arraycopy(page, 0, updated, 0, index);
+            updated[index] = log;
+            System.arraycopy(page, index, updated, index + 1, length - index - 1);
+            pages.put(pageIndex, updated);
+        }
+        // Pages in flight were requested with the old offsets
+        pageGeneration++;
+        loadingPages.clear();
+        rowCount++;
+        int pageCount = (rowCount + pageSize - 1) / pageSize;
+        pageEndDays = Arrays.copyOf(pageEndDays, pageCount);
+        pageEndIds = Arrays.copyOf(pageEndIds, pageCount);
+        for (int i = pageIndex; i < pageCount; i++) {
+            pageEndIds[i] = 0;
+        }
+        if (page != null && page.length + 1 > pageSize) {
+            WeightLog last = pages.get(pageIndex)[pageSize - 1];
+            pageEndDays[pageIndex] = last.getDate().toEpochDay();
+            pageEndIds[pageIndex] = last.getId();
+        }
+        fireTableRowsInserted(row, row);
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public WeightLog getLogAt(int row) {
+        WeightLog[] page = pages.get(row / pageSize);
+        if (page == null) {
+            requestPage(row / pageSize);
+            return null;
+        }
+        int index = row % pageSize;
+        return index < page.length ? page[index] : null;
+    }
+
+    private void requestPage(int pageIndex) {
+        if (!loadingPages.add(pageIndex)) {
+            return;
+        }
+        int requestGeneration = pageGeneration;
+        int offset = pageIndex * pageSize;
+        int anchor = pageIndex - 1;
+        while (anchor >= 0 && pageEndIds[anchor] == 0) {
+            anchor--;
+        }
+        LocalDate afterDate = anchor >= 0 ? LocalDate.ofEpochDay(pageEndDays[anchor]) : startDate;
+        int afterId = anchor >= 0 ? pageEndIds[anchor] : 0;
+        int skip = (pageIndex - anchor - 1) * pageSize;
+        DatabaseTask<List<WeightLog>> query =
+            db -> db.getWeightLogsPage(userId, afterDate, afterId, endDate, skip, pageSize);
+        SwingDatabase.get()
+            .submit(query)
+            .whenComplete((logs, error) -> {
+                if (requestGeneration != pageGeneration) {
+                    return;
+                }
+                loadingPages.remove(pageIndex);
+                if (error != null) {
+                    errorHandler.accept("Error loading logs: " + SwingDatabase.errorMessage(error));
+                    return;
+                }
+                pages.put(pageIndex, logs.toArray(new WeightLog[0]));
+                if (logs.size() == pageSize && pageIndex < pageEndIds.length) {
+                    WeightLog last = logs.get(logs.size() - 1);
+                    pageEndDays[pageIndex] = last.getDate().toEpochDay();
+                    pageEndIds[pageIndex] = last.getId();
+                }
+                int lastRow = Math.min(rowCount, offset + pageSize) - 1;
+                if (lastRow >= offset) {
+                    fireTableRowsUpdated(offset, lastRow);
+                }
+            });
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        switch (column) {
+            case 0: return LocalDate.class;
+            case 1: return Double.class;
+            case 2: case 3: case 4: return Integer.class;
+            default: return String.class;
+        }
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        WeightLog log = getLogAt(row);
+        if (log == null) {
+            // Page is still loading; the cell is repainted when it arrives
+            return null;
+        }
+        switch (column) {
+            case 0: return log.getDate();
+            case 1: return log.getWeight();
+            case 2: return log.getCaloriesConsumed();
+            case 3: return log.getCaloriesBurned();
+            case 4: return log.getExerciseMinutes();
+            default: return log.getNotes();
+        }
+    }
+}
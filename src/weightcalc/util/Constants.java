@@ -7,6 +7,29 @@ public class Constants {
     // Database constants
     public static final String DB_NAME = "weightloss_db";
     public static final String DB_URL = "jdbc:sqlite:" + DB_NAME;
+    public static final String DB_ENGINE = "sqlite"; // sqlite, memory or mapped
+    public static final String DB_ENGINE_PROPERTY = "weightcalc.engine";
+    public static final String DB_LOCATION_PROPERTY = "weightcalc.db";
+    public static final String DB_MAPPED_DIRECTORY = DB_NAME + "_mapped";
+    public static final int DB_READER_POOL_SIZE = 4;
+    public static final long DB_POOL_TIMEOUT_MS = 30_000;
+    public static final int DB_BUSY_TIMEOUT_MS = 5_000;
+    public static final int DB_BATCH_CHUNK_SIZE = 10_000;
+    public static final int DB_BACKFILL_CHUNK_SIZE = 5_000;
+    public static final int DB_FETCH_SIZE = 500;
+    public static final int DB_STATEMENT_CACHE_SIZE = 32; // prepared statements kept per connection
+    public static final int PROFILE_CACHE_SIZE = 10_000;
+    public static final int LATEST_LOG_CACHE_SIZE = 10_000;
+    public static final int GOAL_TRACKER_CACHE_SIZE = 10_000;
+    public static final int DB_SHARD_VIRTUAL_NODES = 128; // ring points per shard
+    public static final int DB_SHARD_ID_BLOCK = 100; // profile ids reserved at a time
+    public static final int DB_WRITE_BEHIND_CAPACITY = 8192; // queued rows before submitters wait
+    public static final int DB_WRITE_BEHIND_BATCH = 1000; // rows per group commit
+    public static final long DB_WRITE_BEHIND_DELAY_MS = 5; // how long a batch may wait to fill
+    public static final int LOG_SEGMENT_INITIAL_RECORDS = 256; // mapped when a segment is created
+    public static final int LOG_SEGMENT_INDEX_STRIDE = 64; // records per sparse index entry
+    public static final int LOG_SEGMENT_OPEN_LIMIT = 128; // open segments, two file handles each
+    public static final int IO_BUFFER_SIZE = 1 << 20; // bytes, for imports and exports
     
     // Weight-related constants
     public static final double MIN_WEIGHT_KG = 30.0;
@@ -18,6 +41,11 @@ public class Constants {
     public static final int MIN_DAILY_CALORIES = 1200;
     public static final int MAX_DAILY_CALORIES = 5000;
     public static final double CALORIES_PER_KG = 7700.0; // Approximate calories in 1kg of fat
+    public static final double DAILY_CALORIE_DEFICIT = 500.0; // For healthy weight loss
+    
+    // Mifflin-St Jeor sex-specific constants
+    public static final double BMR_OFFSET_MALE = 5.0;
+    public static final double BMR_OFFSET_FEMALE = -161.0;
     
     // UI constants
     public static final int WINDOW_WIDTH = 1024;
@@ -25,10 +53,13 @@ public class Constants {
     public static final int PADDING = 10;
     public static final String DATE_FORMAT_DISPLAY = "dd-MM-yyyy";
     public static final String DATE_FORMAT_DB = "yyyy-MM-dd";
+    public static final int LOG_TABLE_PAGE_SIZE = 200;
+    public static final int LOG_TABLE_CACHED_PAGES = 8;
     
     // Weight loss related constants
     public static final double HEALTHY_WEIGHT_LOSS_PER_WEEK = 0.5; // kg
     public static final double MAX_WEIGHT_LOSS_PER_WEEK = 1.0; // kg
+    public static final double TREND_SMOOTHING = 0.1; // EMA weight of one day's reading
     
     // Activity level multipliers for BMR
     public static final double SEDENTARY_MULTIPLIER = 1.2;
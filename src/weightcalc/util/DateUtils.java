@@ -14,6 +14,20 @@ public class DateUtils {
     private static final DateTimeFormatter DB_FORMATTER = 
         DateTimeFormatter.ofPattern(Constants.DATE_FORMAT_DB);
     
+    /**
+     * Returned by the epoch-day parsers when the input is not a valid date
+     */
+    public static final long INVALID_EPOCH_DAY = Long.MIN_VALUE;
+    
+    /**
+     * Length of a yyyy-MM-dd date
+     */
+    public static final int DB_DATE_LENGTH = 10;
+    
+    // Epoch days of 0000-01-01 and 9999-12-31, the range yyyy-MM-dd can hold
+    private static final long MIN_CODEC_EPOCH_DAY = -719528;
+    private static final long MAX_CODEC_EPOCH_DAY = 2932896;
+    
     /**
      * Converts a LocalDate to display format
      */
@@ -25,7 +39,16 @@ public class DateUtils {
      * Converts a LocalDate to database format
      */
     public static String formatForDB(LocalDate date) {
-        return date != null ? date.format(DB_FORMATTER) : "";
+        if (date == null) {
+            return "";
+        }
+        int year = date.getYear();
+        if (year < 0 || year > 9999) {
+            return date.format(DB_FORMATTER);
+        }
+        char[] buf = new char[DB_DATE_LENGTH];
+        writeDigits(year, date.getMonthValue(), date.getDayOfMonth(), buf, 0);
+        return new String(buf);
     }
     
     /**
@@ -43,11 +66,168 @@ public class DateUtils {
      * Parses a database-formatted date string to LocalDate
      */
     public static LocalDate parseDBDate(String dateStr) {
-        try {
-            return LocalDate.parse(dateStr, DB_FORMATTER);
-        } catch (DateTimeParseException e) {
+        if (dateStr == null || dateStr.length() != DB_DATE_LENGTH) {
             return null;
         }
+        long epochDay = parseEpochDay(dateStr, 0);
+        return epochDay != INVALID_EPOCH_DAY ? LocalDate.ofEpochDay(epochDay) : null;
+    }
+    
+    /**
+     * Formats an epoch day as yyyy-MM-dd
+     */
+    public static String formatEpochDay(long epochDay) {
+        char[] buf = new char[DB_DATE_LENGTH];
+        writeEpochDay(epochDay, buf, 0);
+        return new String(buf);
+    }
+    
+    /**
+     * Writes an epoch day as yyyy-MM-dd into buf at offset
+     * @return offset just past the written date
+     */
+    public static int writeEpochDay(long epochDay, char[] buf, int offset) {
+        long civil = civilFromEpochDay(epochDay);
+        writeDigits((int) (civil >> 9), (int) (civil >> 5) & 0xF, (int) civil & 0x1F, buf, offset);
+        return offset + DB_DATE_LENGTH;
+    }
+    
+    /**
+     * Writes an epoch day as ASCII yyyy-MM-dd into buf at offset
+     * @return offset just past the written date
+     */
+    public static int writeEpochDay(long epochDay, byte[] buf, int offset) {
+        long civil = civilFromEpochDay(epochDay);
+        int year = (int) (civil >> 9);
+        int month = (int) (civil >> 5) & 0xF;
+        int day = (int) civil & 0x1F;
+        buf[offset] = (byte) ('0' + year / 1000);
+        buf[offset + 1] = (byte) ('0' + year / 100 % 10);
+        buf[offset + 2] = (byte) ('0' + year / 10 % 10);
+        buf[offset + 3] = (byte) ('0' + year % 10);
+        buf[offset + 4] = '-';
+        buf[offset + 5] = (byte) ('0' + month / 10);
+        buf[offset + 6] = (byte) ('0' + month % 10);
+        buf[offset + 7] = '-';
+        buf[offset + 8] = (byte) ('0' + day / 10);
+        buf[offset + 9] = (byte) ('0' + day % 10);
+        return offset + DB_DATE_LENGTH;
+    }
+    
+    /**
+     * Parses yyyy-MM-dd starting at offset. Never throws for bad input.
+     * @return the epoch day, or INVALID_EPOCH_DAY if the text is not a valid
+     *         date or there are fewer than 10 characters left
+     */
+    public static long parseEpochDay(CharSequence text, int offset) {
+        if (offset < 0 || text.length() - offset < DB_DATE_LENGTH
+                || text.charAt(offset + 4) != '-' || text.charAt(offset + 7) != '-') {
+            return INVALID_EPOCH_DAY;
+        }
+        int year = digits(text.charAt(offset), text.charAt(offset + 1),
+            text.charAt(offset + 2), text.charAt(offset + 3));
+        int month = digits(text.charAt(offset + 5), text.charAt(offset + 6));
+        int day = digits(text.charAt(offset + 8), text.charAt(offset + 9));
+        return epochDayOf(year, month, day);
+    }
+    
+    /**
+     * Parses yyyy-MM-dd from a char buffer, see {@link #parseEpochDay(CharSequence, int)}
+     */
+    public static long parseEpochDay(char[] buf, int offset) {
+        if (offset < 0 || buf.length - offset < DB_DATE_LENGTH
+                || buf[offset + 4] != '-' || buf[offset + 7] != '-') {
+            return INVALID_EPOCH_DAY;
+        }
+        int year = digits(buf[offset], buf[offset + 1], buf[offset + 2], buf[offset + 3]);
+        int month = digits(buf[offset + 5], buf[offset + 6]);
+        int day = digits(buf[offset + 8], buf[offset + 9]);
+        return epochDayOf(year, month, day);
+    }
+    
+    /**
+     * Parses ASCII yyyy-MM-dd from a byte buffer, see {@link #parseEpochDay(CharSequence, int)}
+     */
+    public static long parseEpochDay(byte[] buf, int offset) {
+        if (offset < 0 || buf.length - offset < DB_DATE_LENGTH
+                || buf[offset + 4] != '-' || buf[offset + 7] != '-') {
+            return INVALID_EPOCH_DAY;
+        }
+        int year = digits((char) buf[offset], (char) buf[offset + 1],
+            (char) buf[offset + 2], (char) buf[offset + 3]);
+        int month = digits((char) buf[offset + 5], (char) buf[offset + 6]);
+        int day = digits((char) buf[offset + 8], (char) buf[offset + 9]);
+        return epochDayOf(year, month, day);
+    }
+    
+    // Value of two or four ASCII digits, or -1 if any is not a digit
+    private static int digits(char c0, char c1) {
+        int d0 = c0 - '0';
+        int d1 = c1 - '0';
+        return (d0 | d1 | (9 - d0) | (9 - d1)) < 0 ? -1 : d0 * 10 + d1;
+    }
+    
+    private static int digits(char c0, char c1, char c2, char c3) {
+        int high = digits(c0, c1);
+        int low = digits(c2, c3);
+        return (high | low) < 0 ? -1 : high * 100 + low;
+    }
+    
+    private static void writeDigits(int year, int month, int day, char[] buf, int offset) {
+        buf[offset] = (char) ('0' + year / 1000);
+        buf[offset + 1] = (char) ('0' + year / 100 % 10);
+        buf[offset + 2] = (char) ('0' + year / 10 % 10);
+        buf[offset + 3] = (char) ('0' + year % 10);
+        buf[offset + 4] = '-';
+        buf[offset + 5] = (char) ('0' + month / 10);
+        buf[offset + 6] = (char) ('0' + month % 10);
+        buf[offset + 7] = '-';
+        buf[offset + 8] = (char) ('0' + day / 10);
+        buf[offset + 9] = (char) ('0' + day % 10);
+    }
+    
+    /**
+     * Validated civil date to epoch day (H. Hinnant's days_from_civil)
+     */
+    private static long epochDayOf(int year, int month, int day) {
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)) {
+            return INVALID_EPOCH_DAY;
+        }
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+    
+    /**
+     * Epoch day to civil date (H. Hinnant's civil_from_days), packed as
+     * year << 9 | month << 5 | day to avoid allocating
+     */
+    private static long civilFromEpochDay(long epochDay) {
+        if (epochDay < MIN_CODEC_EPOCH_DAY || epochDay > MAX_CODEC_EPOCH_DAY) {
+            throw new IllegalArgumentException("Epoch day " + epochDay 
+                + " is outside years 0000-9999");
+        }
+        long z = epochDay + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long mp = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        long month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+    
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2: return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4: case 6: case 9: case 11: return 30;
+            default: return 31;
+        }
     }
     
     /**